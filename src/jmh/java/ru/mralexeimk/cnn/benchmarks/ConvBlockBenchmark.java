@@ -0,0 +1,70 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mralexeimk.cnn.enums.ActivationFunInterface;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.models.Convolution;
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.Matrix3D;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convolution block (8 kernels (5,5), biases, SIGMOID, pulling (2,2)) on (size,size) input:
+ * separate passes through the full-resolution result vs Convolution.convertByKernelPulling()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ConvBlockBenchmark {
+    private static final int KERNELS = 8, KERNEL = 5, SIZE = 2;
+
+    @Param({"28", "64", "128"})
+    public int size;
+
+    @Param({"AVERAGE", "MAX"})
+    public PullingType pullingType;
+
+    private Matrix3D A, K, full, pulled;
+    private List<Double> biases;
+    private double[] cols, tile;
+
+    @Setup
+    public void setup() {
+        A = new Matrix3D(new Matrix(size, size, 0, 1));
+        K = new Matrix3D(KERNEL, KERNEL, 0);
+        biases = new ArrayList<>();
+        for(int i = 0; i < KERNELS; ++i) {
+            K.add(new Matrix(KERNEL, KERNEL, -1, 1));
+            biases.add(0.1);
+        }
+        int out = size - KERNEL + 1;
+        full = new Matrix3D(out, out, KERNELS);
+        pulled = new Matrix3D(out/SIZE, out/SIZE, KERNELS);
+        cols = new double[Convolution.getColsSize(size, size, KERNEL, KERNEL, 0, 1)];
+        tile = new double[Convolution.getTileSize(out, out, SIZE, KERNELS)];
+    }
+
+    @Benchmark
+    public Matrix3D separate() {
+        Convolution.convertByKernel(A, K, 0, PaddingFill.BY_ZEROES, 1, cols, full);
+        full.sum(biases);
+        ActivationFunInterface activation = ActivationFunType.SIGMOID.getActivationFunInterface();
+        double[] data = full.getBuffer();
+        for(int k = 0; k < data.length; ++k) data[k] = activation.activationFun(data[k]);
+        return full.getConvertByPulling(pullingType, SIZE, pulled);
+    }
+
+    @Benchmark
+    public Matrix3D fused() {
+        return Convolution.convertByKernelPulling(A.get(0), K, 0, KERNELS, biases, ActivationFunType.SIGMOID,
+                pullingType, SIZE, cols, tile, pulled);
+    }
+}
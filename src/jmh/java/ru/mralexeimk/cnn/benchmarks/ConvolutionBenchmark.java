@@ -0,0 +1,56 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.MatrixExtractor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MatrixExtractor.getConvertByKernel() on (size,size) input with (kernel,kernel) kernel:
+ * 28/12 with kernel 5 - layers of default networks, 64/128 - larger inputs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ConvolutionBenchmark {
+    @Param({"12", "28", "64", "128"})
+    public int size;
+
+    @Param({"3", "5"})
+    public int kernel;
+
+    @Param({"BY_ZEROES", "BY_MEDIAN"})
+    public PaddingFill paddingFill;
+
+    @Param({"1", "2"})
+    public int stride;
+
+    private Matrix A, K;
+
+    @Setup
+    public void setup() {
+        A = new Matrix(size, size, 0, 1);
+        K = new Matrix(kernel, kernel, -1, 1);
+    }
+
+    /**
+     * Valid convolution (no padding) like FilterLayer
+     */
+    @Benchmark
+    public Matrix getConvertByKernel() {
+        return MatrixExtractor.getConvertByKernel(A, K, 0, 0, paddingFill, stride, stride);
+    }
+
+    /**
+     * Same-size convolution (padding kernel/2), padding is filled by paddingFill
+     */
+    @Benchmark
+    public Matrix getConvertByKernelPadded() {
+        return MatrixExtractor.getConvertByKernel(A, K, kernel/2, kernel/2, paddingFill, stride, stride);
+    }
+}
@@ -0,0 +1,64 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.models.Convolution;
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.Matrix3D;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matrix3D convolutions of (size,size,depth) input with depth (kernel,kernel) kernels into preallocated results:
+ * 28/12 with kernel 5 and depth 8 - Filter layers of default network, 64 - larger input
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class Matrix3DBenchmark {
+    @Param({"12", "28", "64"})
+    public int size;
+
+    @Param({"3", "5"})
+    public int kernel;
+
+    @Param({"8"})
+    public int depth;
+
+    private Matrix3D A, K, res;
+    private Matrix merged;
+    private double[] cols;
+
+    @Setup
+    public void setup() {
+        A = new Matrix3D(size, size, 0);
+        K = new Matrix3D(kernel, kernel, 0);
+        for(int z = 0; z < depth; ++z) {
+            A.add(new Matrix(size, size, 0, 1));
+            K.add(new Matrix(kernel, kernel, -1, 1));
+        }
+        int out = Convolution.getOutputSize(size, kernel, 0, 1);
+        res = new Matrix3D(out, out, depth);
+        merged = new Matrix(size, size);
+        cols = new double[Convolution.getColsSize(size, size, kernel, kernel, 0, 1)];
+    }
+
+    /**
+     * Convolution of sum of depths of A with every kernel (like InputLayer)
+     */
+    @Benchmark
+    public Matrix3D convertByMergeKernel() {
+        return Convolution.convertByMergeKernel(A, K, 0, PaddingFill.BY_ZEROES, 1, merged, cols, res);
+    }
+
+    /**
+     * Convolution of every depth of A with its kernel (like PullingLayer)
+     */
+    @Benchmark
+    public Matrix3D convertByKernel() {
+        return Convolution.convertByKernel(A, K, 0, PaddingFill.BY_ZEROES, 1, cols, res);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.MatrixExtractor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dense Matrix kernels on (size,size) matrices: 8/24/28 - sizes of default networks, 128/256 - larger ones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBenchmark {
+    @Param({"8", "24", "28", "128", "256"})
+    public int size;
+
+    private Matrix A, B, vector, result;
+
+    @Setup
+    public void setup() {
+        A = new Matrix(size, size, -1, 1);
+        B = new Matrix(size, size, -1, 1);
+        vector = new Matrix(1, size, -1, 1);
+        result = new Matrix(size, size);
+    }
+
+    /**
+     * Matrix.multiply() is in place, so copy of A is included (same as in Hadamard benchmark)
+     */
+    @Benchmark
+    public Matrix multiply() {
+        result.replace(0, 0, A);
+        return result.multiply(B);
+    }
+
+    @Benchmark
+    public Matrix getMultiply() {
+        return MatrixExtractor.getMultiply(A, B);
+    }
+
+    /**
+     * (size,size) x (size,1), like Neurons layer
+     */
+    @Benchmark
+    public Matrix getMultiplyVector() {
+        return MatrixExtractor.getMultiply(A, vector);
+    }
+
+    /**
+     * Element-wise branch of Matrix.multiply()
+     */
+    @Benchmark
+    public Matrix multiplyHadamard() {
+        result.replace(0, 0, A);
+        return result.multiply(result);
+    }
+
+    @Benchmark
+    public Matrix getTransposed() {
+        return A.getTransposed();
+    }
+
+    @Benchmark
+    public Matrix getInverse() {
+        return MatrixExtractor.getInverse(A);
+    }
+
+    @Benchmark
+    public Matrix getMedianFiltered() {
+        return MatrixExtractor.getMedianFiltered(A, 3);
+    }
+}
@@ -0,0 +1,93 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.mralexeimk.cnn.Main;
+import ru.mralexeimk.cnn.models.InferenceSession;
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.Matrix3D;
+import ru.mralexeimk.cnn.models.NeuralNetwork;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward (query, queryMax, sessionQuery through InferenceSession with fused convolution and pulling)
+ * and single-sample backward (train) passes of whole networks:
+ * DENSE - Main.createLayers(), CONV - Main.createConvLayers() (same as default network).
+ * Inputs are random (28,28,1) samples generated in setup. Allocation rate is reported with GC profiler
+ * (-prof gc, or run main() of this class)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class NetworkBenchmark {
+    private static final int SAMPLES = 16;
+
+    @Param({"DENSE", "CONV"})
+    public String architecture;
+
+    @Param({"false", "true"})
+    public boolean allocationFree;
+
+    private NeuralNetwork nn;
+    private InferenceSession session;
+    private Matrix3D[] inputs;
+    private Matrix[] targets;
+    private int next;
+
+    @Setup
+    public void setup() {
+        nn = new NeuralNetwork("bench", architecture.equals("CONV") ? Main.createConvLayers() : Main.createLayers(),
+                0.01);
+        nn.setAllocationFree(allocationFree);
+        session = nn.createSession();
+        inputs = new Matrix3D[SAMPLES];
+        targets = new Matrix[SAMPLES];
+        for(int i = 0; i < SAMPLES; ++i) {
+            inputs[i] = new Matrix3D(28, 28, 0);
+            inputs[i].add(new Matrix(28, 28, 0.01, 1));
+            targets[i] = new Matrix(1, 10, 0.01);
+            targets[i].set(0, i % 10, 0.99);
+        }
+    }
+
+    private int nextSample() {
+        next = (next + 1) % SAMPLES;
+        return next;
+    }
+
+    @Benchmark
+    public Matrix query() {
+        return nn.query(inputs[nextSample()]);
+    }
+
+    @Benchmark
+    public int queryMax() {
+        return nn.queryMax(inputs[nextSample()]);
+    }
+
+    @Benchmark
+    public Matrix sessionQuery() {
+        return session.query(inputs[nextSample()]);
+    }
+
+    @Benchmark
+    public NeuralNetwork train() {
+        int i = nextSample();
+        nn.train(inputs[i], targets[i]);
+        return nn;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NetworkBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,53 @@
+package ru.mralexeimk.cnn.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.models.Matrix;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulling of (size,size) matrix by (2,2) windows: 24/8 - Pulling layers of default networks, 64/256 - larger ones
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class PullingBenchmark {
+    @Param({"8", "24", "64", "256"})
+    public int size;
+
+    @Param({"AVERAGE", "MAX", "MIN"})
+    public PullingType pullingType;
+
+    private Matrix A, pulled;
+
+    @Setup
+    public void setup() {
+        A = new Matrix(size, size, 0, 1);
+        pulled = new Matrix(size/2, size/2);
+    }
+
+    /**
+     * Pulling into preallocated result (as in layers)
+     */
+    @Benchmark
+    public Matrix getConvertByPulling() {
+        return A.getConvertByPulling(pullingType, 2, pulled);
+    }
+
+    /**
+     * Allocating variant (Matrix.convertByMaxPulling() etc.), A is restored by copy on every call
+     */
+    @Benchmark
+    public Matrix convertByPulling() {
+        Matrix m = A.clone();
+        return switch(pullingType) {
+            case AVERAGE -> m.convertByAveragePulling(2);
+            case MAX -> m.convertByMaxPulling(2);
+            case MIN -> m.convertByMinPulling(2);
+        };
+    }
+}
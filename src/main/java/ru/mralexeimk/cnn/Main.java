@@ -9,20 +9,34 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Main {
-    private static final List<Layer> layers = new ArrayList<>(List.of(
-            new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
-            new NeuronsLayer(512, ActivationFunType.SIGMOID),
-            new OutputLayer(10))
-    );
-    private static final List<Layer> convLayers = new ArrayList<>(List.of(
-            new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
-            new FilterLayer(24, 24, 8),
-            new PullingLayer(12, 12, 8, PullingType.AVERAGE, ActivationFunType.SIGMOID),
-            new FilterLayer(8, 8, 16),
-            new PullingLayer(4, 4, 16, PullingType.AVERAGE),
-            new NeuronsLayer(256, ActivationFunType.SIGMOID),
-            new OutputLayer(10))
-    );
+    private static final List<Layer> layers = createLayers();
+    private static final List<Layer> convLayers = createConvLayers();
+
+    /**
+     * @return New layers of dense network for mnist
+     */
+    public static List<Layer> createLayers() {
+        return new ArrayList<>(List.of(
+                new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                new NeuronsLayer(512, ActivationFunType.SIGMOID),
+                new OutputLayer(10))
+        );
+    }
+
+    /**
+     * @return New layers of convolutional network for mnist (same as default network)
+     */
+    public static List<Layer> createConvLayers() {
+        return new ArrayList<>(List.of(
+                new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                new FilterLayer(24, 24, 8),
+                new PullingLayer(12, 12, 8, PullingType.AVERAGE, ActivationFunType.SIGMOID),
+                new FilterLayer(8, 8, 16),
+                new PullingLayer(4, 4, 16, PullingType.AVERAGE),
+                new NeuronsLayer(256, ActivationFunType.SIGMOID),
+                new OutputLayer(10))
+        );
+    }
 
     public static void main(String[] args) {
         mnistTest();
@@ -33,6 +47,6 @@ public class Main {
         nn.train(DataExtractor.extractFromFile("/train/mnist_train_100.csv", 28, 28, 1, 10),
                 50, true);
         nn.printData();
-        nn.test(DataExtractor.extractFromFile("/test/mnist_test.csv", 28, 28, 1, 10), true);
+        nn.test(DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10), true);
     }
 }
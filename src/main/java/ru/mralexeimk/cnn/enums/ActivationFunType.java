@@ -3,25 +3,53 @@ package ru.mralexeimk.cnn.enums;
 import java.io.Serializable;
 
 public enum ActivationFunType implements Serializable {
-    SIGMOID(x -> 1.0/(1 + Math.exp(-x))),
-    TANH(x -> (Math.exp(x) - Math.exp(-x))/(Math.exp(x) + Math.exp(-x))),
-    RELU(x -> Math.max(0, x)),
-    L_RELU(x -> Math.max(0.001*x, x)),
-    SOFT_PLUS(x-> Math.log(1 + Math.exp(x))),
-    SOFT_MAX(x -> Math.exp(x)),
-    NONE(x -> x);
+    SIGMOID(x -> 1.0/(1 + Math.exp(-x)), true),
+    TANH(x -> (Math.exp(x) - Math.exp(-x))/(Math.exp(x) + Math.exp(-x)), false),
+    RELU(x -> Math.max(0, x), true),
+    L_RELU(x -> Math.max(0.001*x, x), true),
+    SOFT_PLUS(x-> Math.log(1 + Math.exp(x)), true),
+    SOFT_MAX(x -> Math.exp(x), false),
+    NONE(x -> x, true);
 
+    private final ActivationFunInterface defaultActivationFunInterface;
+    private final boolean defaultMonotonic;
     private ActivationFunInterface activationFunInterface;
+    private boolean monotonic;
 
-    ActivationFunType(ActivationFunInterface activationFunInterface) {
+    ActivationFunType(ActivationFunInterface activationFunInterface, boolean monotonic) {
+        this.defaultActivationFunInterface = activationFunInterface;
+        this.defaultMonotonic = monotonic;
         this.activationFunInterface = activationFunInterface;
+        this.monotonic = monotonic;
+    }
+
+    /**
+     * @return Whether x <= y gives f(x) <= f(y) for computed values of the function, so max/min of
+     * activated values is activation of max/min (TANH is not: its quotient may lose order by rounding)
+     */
+    public boolean isMonotonic() {
+        return monotonic;
     }
 
     public ActivationFunInterface getActivationFunInterface() {
         return activationFunInterface;
     }
 
+    /**
+     * Replace function of type. Replaced function is not known to be monotonic (see isMonotonic()),
+     * unless it is the default function of type
+     */
     public void setActivationFunInterface(ActivationFunInterface activationFunInterface) {
+        setActivationFunInterface(activationFunInterface,
+                activationFunInterface == defaultActivationFunInterface && defaultMonotonic);
+    }
+
+    /**
+     * Replace function of type
+     * @param monotonic Whether function is monotonic (see isMonotonic())
+     */
+    public void setActivationFunInterface(ActivationFunInterface activationFunInterface, boolean monotonic) {
         this.activationFunInterface = activationFunInterface;
+        this.monotonic = monotonic;
     }
 }
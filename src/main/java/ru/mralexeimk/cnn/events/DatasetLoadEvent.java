@@ -0,0 +1,25 @@
+package ru.mralexeimk.cnn.events;
+
+import jdk.jfr.*;
+
+/**
+ * Load of dataset: csv read into memory or converted into cache, mapping of ByteDataset or IdxDataset
+ */
+@Name("ru.mralexeimk.cnn.DatasetLoad")
+@Label("Dataset Load")
+@Category({"CNN", "I/O"})
+public class DatasetLoadEvent extends Event {
+    @Label("Format")
+    public String format;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Bytes")
+    @Description("Bytes read (csv) or mapped")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,56 @@
+package ru.mralexeimk.cnn.events;
+
+import jdk.jfr.*;
+import ru.mralexeimk.cnn.models.Layer;
+
+/**
+ * Backward step of layer in NeuralNetwork.train() or trainBatch(): update of weights of layer
+ * by errors of next layer and errors of previous layer
+ */
+@Name("ru.mralexeimk.cnn.LayerBackward")
+@Label("Layer Backward")
+@Category({"CNN", "Layers"})
+@StackTrace(false)
+public class LayerBackwardEvent extends Event {
+    @Label("Index")
+    public int index;
+
+    @Label("Layer Type")
+    public String layerType;
+
+    @Label("Next Layer Type")
+    public String nextLayerType;
+
+    @Label("Shapes")
+    public String shapes;
+
+    @Label("Weight Shapes")
+    public String weightShapes;
+
+    @Label("Batch")
+    public int batch;
+
+    @Label("Weight Bytes")
+    @Description("Bytes of updated weights")
+    @DataAmount
+    public long weightBytes;
+
+    /**
+     * End event of backward step of layer index on batch samples and commit it if it is recorded
+     */
+    public void finish(int index, Layer layer, int batch) {
+        end();
+        if(shouldCommit()) {
+            this.index = index;
+            layerType = layer.getLayerType().toString();
+            if(layer.getNextLayer() != null) nextLayerType = layer.getNextLayer().getLayerType().toString();
+            shapes = layer.getData().getShapes();
+            if(layer.getW() != null) {
+                weightShapes = layer.getW().getShapes();
+                weightBytes = 8L * layer.getW().getBuffer().length;
+            }
+            this.batch = batch;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mralexeimk.cnn.events;
+
+import jdk.jfr.*;
+import ru.mralexeimk.cnn.models.Layer;
+
+/**
+ * Forward step of layer (data of layer into data of next layer) in NeuralNetwork or InferenceSession
+ */
+@Name("ru.mralexeimk.cnn.LayerForward")
+@Label("Layer Forward")
+@Category({"CNN", "Layers"})
+@StackTrace(false)
+public class LayerForwardEvent extends Event {
+    @Label("Index")
+    public int index;
+
+    @Label("Layer Type")
+    public String layerType;
+
+    @Label("Input Shapes")
+    public String inputShapes;
+
+    @Label("Output Shapes")
+    public String outputShapes;
+
+    @Label("Batch")
+    public int batch;
+
+    @Label("Bytes")
+    @Description("Bytes of input and output data of all samples")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * End event of forward step of layer index on batch samples and commit it if it is recorded
+     */
+    public void finish(int index, Layer layer, int batch) {
+        end();
+        if(shouldCommit()) {
+            this.index = index;
+            layerType = layer.getLayerType().toString();
+            inputShapes = layer.getData().getShapes();
+            this.batch = batch;
+            bytes = 8L * batch * layer.getData().getBuffer().length;
+            if(layer.getNextLayer() != null) {
+                outputShapes = layer.getNextLayer().getData().getShapes();
+                bytes += 8L * batch * layer.getNextLayer().getData().getBuffer().length;
+            }
+            commit();
+        }
+    }
+}
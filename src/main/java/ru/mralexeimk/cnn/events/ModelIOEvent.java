@@ -0,0 +1,24 @@
+package ru.mralexeimk.cnn.events;
+
+import jdk.jfr.*;
+
+/**
+ * Write or read of NeuralNetwork file (ModelFormat, used by saveWeights() and loadWeights())
+ */
+@Name("ru.mralexeimk.cnn.ModelIO")
+@Label("Model I/O")
+@Category({"CNN", "I/O"})
+public class ModelIOEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Success")
+    public boolean success;
+}
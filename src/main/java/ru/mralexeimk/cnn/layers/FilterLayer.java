@@ -1,10 +1,13 @@
 package ru.mralexeimk.cnn.layers;
 
 import ru.mralexeimk.cnn.models.Layer;
+import ru.mralexeimk.cnn.models.Matrix3D;
 import ru.mralexeimk.cnn.enums.LayerType;
 import ru.mralexeimk.cnn.enums.PullingType;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FilterLayer extends Layer implements Serializable {
     public FilterLayer(int sizeX, int sizeY, int sizeD) {
@@ -24,18 +27,72 @@ public class FilterLayer extends Layer implements Serializable {
         return getSizeX() / nextLayer.getSizeX();
     }
 
+    /**
+     * @return Whether pulling into next layer keeps winners of windows (MAX and MIN)
+     */
+    public boolean hasWinners() {
+        return nextLayer instanceof PullingLayer pl && pl.getPullingType() != PullingType.AVERAGE;
+    }
+
+    /**
+     * @return Winners of MAX/MIN pulling of the last doStep() or doStepInPlace() (see Matrix3D.scatter())
+     */
+    public int[] getWinners() {
+        if(workspace == null || workspace.winners == null) {
+            throw new RuntimeException("Winners are not kept by "+this);
+        }
+        return workspace.winners;
+    }
+
+    @Override
+    public Workspace createWorkspace() {
+        Workspace workspace = super.createWorkspace();
+        if(hasWinners()) {
+            workspace.winners = new int[nextLayer.getSizeX()*nextLayer.getSizeY()*nextLayer.getSizeD()];
+        }
+        return workspace;
+    }
+
     @Override
     public void doStep() {
         if(nextLayer instanceof PullingLayer pl) {
             if(pl.getPullingType() == PullingType.AVERAGE) {
                 nextLayer.setData(data.getConvertByAveragePulling(getDiv()));
             }
-            else if(pl.getPullingType() == PullingType.MAX) {
-                nextLayer.setData(data.getConvertByMaxPulling(getDiv()));
+            else {
+                nextLayer.setData(data.getConvertByPulling(pl.getPullingType(), getDiv(),
+                        new Matrix3D(nextLayer.getSizeX(), nextLayer.getSizeY(), nextLayer.getSizeD()),
+                        workspace != null ? workspace.winners : null));
             }
-            else if(pl.getPullingType() == PullingType.MIN) {
-                nextLayer.setData(data.getConvertByMinPulling(getDiv()));
+        }
+    }
+
+    @Override
+    public void doStepInto(Matrix3D data, Matrix3D next, Workspace workspace) {
+        if(nextLayer instanceof PullingLayer pl) {
+            data.getConvertByPulling(pl.getPullingType(), getDiv(), next, workspace.winners);
+        }
+    }
+
+    @Override
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch) {
+        return doStepBatch(batch, null);
+    }
+
+    /**
+     * Same as doStepBatch(), winners of MAX/MIN pulling of every sample are added to winners (if not null)
+     */
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch, List<int[]> winners) {
+        if(nextLayer instanceof PullingLayer pl) {
+            List<Matrix3D> next = new ArrayList<>();
+            for(Matrix3D m : batch) {
+                Matrix3D res = new Matrix3D(nextLayer.getSizeX(), nextLayer.getSizeY(), nextLayer.getSizeD());
+                int[] w = winners != null && hasWinners() ? new int[res.getBuffer().length] : null;
+                next.add(m.getConvertByPulling(pl.getPullingType(), getDiv(), res, w));
+                if(w != null) winners.add(w);
             }
+            return next;
         }
+        return super.doStepBatch(batch);
     }
 }
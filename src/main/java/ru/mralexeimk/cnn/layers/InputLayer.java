@@ -1,13 +1,18 @@
 package ru.mralexeimk.cnn.layers;
 
+import ru.mralexeimk.cnn.models.Convolution;
+import ru.mralexeimk.cnn.models.Dense;
 import ru.mralexeimk.cnn.models.Layer;
 import ru.mralexeimk.cnn.models.Matrix;
 import ru.mralexeimk.cnn.models.Matrix3D;
+import ru.mralexeimk.cnn.models.MatrixExtractor;
 import ru.mralexeimk.cnn.enums.ActivationFunType;
 import ru.mralexeimk.cnn.enums.LayerType;
+import ru.mralexeimk.cnn.enums.PaddingFill;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 public class InputLayer extends Layer implements Serializable {
     public InputLayer(int sizeX, int sizeY, int sizeD) {
@@ -58,10 +63,72 @@ public class InputLayer extends Layer implements Serializable {
     @Override
     public void doStep() {
         if(nextLayer instanceof NeuronsLayer) {
-            nextLayer.setData(activationFun(W.getConvertByMultiply(data.getConvertToLine()).sum(biases)));
+            Matrix3D next = new Matrix3D(1, nextLayer.getSizeY(), 1);
+            Dense.forward(W.getMatrix(), data.getBuffer(), 0, getBias(0), activationFunType, next.getBuffer(), 0);
+            nextLayer.setData(next);
         }
         else if(nextLayer instanceof FilterLayer) {
-            nextLayer.setData(activationFun(data.getConvertByMergeKernel(W).sum(biases)));
+            nextLayer.setData(applyActivationFun(data.getConvertByMergeKernel(W).sum(biases)));
         }
     }
+
+    @Override
+    public Workspace createWorkspace() {
+        Workspace workspace = super.createWorkspace();
+        if(nextLayer instanceof FilterLayer) {
+            workspace.merged = new Matrix(getSizeX(), getSizeY());
+            workspace.cols = new double[Convolution.getColsSize(getSizeX(), getSizeY(), W.getN(), W.getM(), 0, 1)];
+        }
+        if(isFusedWithPulling()) {
+            workspace.tile = new double[Convolution.getTileSize(nextLayer.getSizeX(), nextLayer.getSizeY(),
+                    ((FilterLayer) nextLayer).getDiv(), W.getD())];
+        }
+        return workspace;
+    }
+
+    /**
+     * Convolution, biases, activation and pulling of the next FilterLayer are fused
+     * (see Convolution.convertByKernelPulling()), except SOFT_MAX activation which needs the whole result
+     */
+    @Override
+    public boolean isFusedWithPulling() {
+        return nextLayer instanceof FilterLayer fl && fl.getNextLayer() instanceof PullingLayer
+                && activationFunType != ActivationFunType.SOFT_MAX;
+    }
+
+    @Override
+    public void doFusedStepInto(Matrix3D data, Matrix3D pulled, Workspace workspace) {
+        if(nextLayer instanceof FilterLayer fl && fl.getNextLayer() instanceof PullingLayer pl) {
+            Convolution.convertByKernelPulling(Convolution.merge(data, 1, workspace.merged), W, 0, W.getD(), biases,
+                    activationFunType, pl.getPullingType(), fl.getDiv(), workspace.cols, workspace.tile, pulled);
+        }
+        else super.doFusedStepInto(data, pulled, workspace);
+    }
+
+    @Override
+    public void doStepInto(Matrix3D data, Matrix3D next, Workspace workspace) {
+        if(nextLayer instanceof NeuronsLayer) {
+            Dense.forward(W.getMatrix(), data.getBuffer(), 0, getBias(0), activationFunType, next.getBuffer(), 0);
+        }
+        else if(nextLayer instanceof FilterLayer) {
+            Convolution.convertByMergeKernel(data, W, 0, PaddingFill.BY_MEDIAN, 1,
+                    workspace.merged, workspace.cols, next);
+            applyActivationFun(next.sum(biases));
+        }
+    }
+
+    @Override
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch) {
+        if(nextLayer instanceof NeuronsLayer) {
+            return Dense.forwardBatch(MatrixExtractor.getStacked(batch), W.getMatrix(), getBias(0), activationFunType);
+        }
+        if(nextLayer instanceof FilterLayer) {
+            List<Matrix3D> next = new ArrayList<>();
+            for(Matrix3D m : batch) {
+                next.add(applyActivationFun(m.getConvertByMergeKernel(W).sum(biases)));
+            }
+            return next;
+        }
+        return super.doStepBatch(batch);
+    }
 }
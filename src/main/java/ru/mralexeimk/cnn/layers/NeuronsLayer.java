@@ -1,13 +1,16 @@
 package ru.mralexeimk.cnn.layers;
 
+import ru.mralexeimk.cnn.models.Dense;
 import ru.mralexeimk.cnn.models.Layer;
 import ru.mralexeimk.cnn.models.Matrix;
 import ru.mralexeimk.cnn.models.Matrix3D;
+import ru.mralexeimk.cnn.models.MatrixExtractor;
 import ru.mralexeimk.cnn.enums.ActivationFunType;
 import ru.mralexeimk.cnn.enums.LayerType;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 public class NeuronsLayer extends Layer implements Serializable {
     public NeuronsLayer(int units) {
@@ -41,7 +44,24 @@ public class NeuronsLayer extends Layer implements Serializable {
     @Override
     public void doStep() {
         if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
-            nextLayer.setData(activationFun(W.getConvertByMultiply(data).sum(biases)));
+            Matrix3D next = new Matrix3D(1, nextLayer.getSizeY(), 1);
+            Dense.forward(W.getMatrix(), data.getBuffer(), 0, getBias(0), activationFunType, next.getBuffer(), 0);
+            nextLayer.setData(next);
         }
     }
+
+    @Override
+    public void doStepInto(Matrix3D data, Matrix3D next, Workspace workspace) {
+        if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
+            Dense.forward(W.getMatrix(), data.getBuffer(), 0, getBias(0), activationFunType, next.getBuffer(), 0);
+        }
+    }
+
+    @Override
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch) {
+        if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
+            return Dense.forwardBatch(MatrixExtractor.getStacked(batch), W.getMatrix(), getBias(0), activationFunType);
+        }
+        return super.doStepBatch(batch);
+    }
 }
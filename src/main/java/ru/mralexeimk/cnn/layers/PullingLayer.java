@@ -1,14 +1,17 @@
 package ru.mralexeimk.cnn.layers;
 
+import ru.mralexeimk.cnn.models.Convolution;
 import ru.mralexeimk.cnn.models.Layer;
 import ru.mralexeimk.cnn.models.Matrix;
 import ru.mralexeimk.cnn.models.Matrix3D;
 import ru.mralexeimk.cnn.enums.ActivationFunType;
 import ru.mralexeimk.cnn.enums.LayerType;
+import ru.mralexeimk.cnn.enums.PaddingFill;
 import ru.mralexeimk.cnn.enums.PullingType;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
 
 public class PullingLayer extends Layer implements Serializable {
     private PullingType pullingType;
@@ -59,10 +62,66 @@ public class PullingLayer extends Layer implements Serializable {
     @Override
     public void doStep() {
         if(nextLayer instanceof FilterLayer) {
-            nextLayer.setData(activationFun(data.getConvertByKernel(W).sum(biases)));
+            nextLayer.setData(applyActivationFun(data.getConvertByKernel(W).sum(biases)));
         }
         else if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
             nextLayer.setData(data.getConvertToLine());
         }
     }
+
+    @Override
+    public Workspace createWorkspace() {
+        Workspace workspace = super.createWorkspace();
+        if(nextLayer instanceof FilterLayer) {
+            workspace.cols = new double[Convolution.getColsSize(getSizeX(), getSizeY(), W.getN(), W.getM(), 0, 1)];
+        }
+        if(isFusedWithPulling()) {
+            workspace.tile = new double[Convolution.getTileSize(nextLayer.getSizeX(), nextLayer.getSizeY(),
+                    ((FilterLayer) nextLayer).getDiv(), getDiv())];
+        }
+        return workspace;
+    }
+
+    @Override
+    public boolean isFusedWithPulling() {
+        return nextLayer instanceof FilterLayer fl && fl.getNextLayer() instanceof PullingLayer
+                && activationFunType != ActivationFunType.SOFT_MAX;
+    }
+
+    @Override
+    public void doFusedStepInto(Matrix3D data, Matrix3D pulled, Workspace workspace) {
+        if(nextLayer instanceof FilterLayer fl && fl.getNextLayer() instanceof PullingLayer pl) {
+            for(int i = 0; i < W.getD(); i += getDiv()) {
+                Convolution.convertByKernelPulling(data.get(i/getDiv()), W, i, Math.min(getDiv(), W.getD()-i), biases,
+                        activationFunType, pl.getPullingType(), fl.getDiv(), workspace.cols, workspace.tile, pulled);
+            }
+        }
+        else super.doFusedStepInto(data, pulled, workspace);
+    }
+
+    @Override
+    public void doStepInto(Matrix3D data, Matrix3D next, Workspace workspace) {
+        if(nextLayer instanceof FilterLayer) {
+            Convolution.convertByKernel(data, W, 0, PaddingFill.BY_MEDIAN, 1, workspace.cols, next);
+            applyActivationFun(next.sum(biases));
+        }
+        else if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
+            System.arraycopy(data.getBuffer(), 0, next.getBuffer(), 0, next.getBuffer().length);
+        }
+    }
+
+    @Override
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch) {
+        List<Matrix3D> next = new ArrayList<>();
+        for(Matrix3D m : batch) {
+            if(nextLayer instanceof FilterLayer) {
+                next.add(applyActivationFun(m.getConvertByKernel(W).sum(biases)));
+            }
+            else if(nextLayer instanceof NeuronsLayer || nextLayer instanceof OutputLayer) {
+                next.add(m.getConvertToLine());
+            }
+            else return super.doStepBatch(batch);
+        }
+        return next;
+    }
 }
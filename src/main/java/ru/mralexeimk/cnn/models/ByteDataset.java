@@ -0,0 +1,141 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.events.DatasetLoadEvent;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Dataset of uint8 pixels and labels in binary file (little-endian):
+ * header - magic "CNND", version, count of samples, inputX, inputY, inputZ, outputUnits;
+ * then for every sample label byte and inputX*inputY*inputZ pixel bytes.
+ * File is memory-mapped (see MappedDataset)
+ */
+public class ByteDataset extends MappedDataset {
+    public static final int MAGIC = 0x444E4E43;
+    public static final int VERSION = 1;
+    private static final int HEADER = 7*4;
+
+    private ByteDataset(ByteBuffer buf, File file) throws IOException {
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        if(buf.limit() < HEADER || buf.getInt(0) != MAGIC) throw new IOException("Not a dataset file: "+file);
+        if(buf.getInt(4) != VERSION) throw new IOException("Unsupported dataset version "+buf.getInt(4)+" in "+file);
+        len = buf.getInt(8);
+        inputX = buf.getInt(12);
+        inputY = buf.getInt(16);
+        inputZ = buf.getInt(20);
+        outputUnits = buf.getInt(24);
+        int sampleSize = 1 + inputX*inputY*inputZ;
+        if(buf.limit() != HEADER + (long)len*sampleSize) throw new IOException("Truncated dataset file: "+file);
+        setLabels(buf, HEADER, sampleSize);
+        setPixels(buf, HEADER + 1, sampleSize);
+    }
+
+    /**
+     * Map dataset file written by write()
+     */
+    public static ByteDataset open(File file) throws IOException {
+        DatasetLoadEvent event = new DatasetLoadEvent();
+        event.begin();
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteDataset res = new ByteDataset(map, file);
+            DataExtractor.commit(event, "byte", file.getPath(), res.getLen(), map.limit());
+            return res;
+        }
+    }
+
+    /**
+     * Convert csv dataset (line: label,pixel,pixel,... with integer pixels in [0, 255]) into dataset file.
+     * It is written into temporary file next to file and moved to file only when it's complete,
+     * so failed conversion never leaves broken file
+     * @param path Path of resource or (if there is no such resource) of file
+     */
+    public static void write(String path, File file, int inputX, int inputY, int inputZ, int outputUnits) throws IOException {
+        if(outputUnits > 256) throw new IllegalArgumentException("Labels must fit in byte");
+        DatasetLoadEvent event = new DatasetLoadEvent();
+        event.begin();
+        int count = 0;
+        byte[] sample = new byte[1 + inputX*inputY*inputZ];
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(DataExtractor.open(path), StandardCharsets.UTF_8));
+            FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.position(HEADER);
+            ByteBuffer out = ByteBuffer.allocate(1 << 16);
+            String line;
+            int lineNumber = 0;
+            while((line = reader.readLine()) != null) {
+                ++lineNumber;
+                if(line.isBlank()) continue;
+                try {
+                    parseLine(line, sample, outputUnits);
+                } catch (RuntimeException e) {
+                    throw new IOException("Incorrect line "+lineNumber+" of "+path+": "+e.getMessage(), e);
+                }
+                if(out.remaining() < sample.length) {
+                    flush(out, channel);
+                }
+                if(sample.length > out.capacity()) {
+                    channel.write(ByteBuffer.wrap(sample));
+                }
+                else out.put(sample);
+                ++count;
+            }
+            flush(out, channel);
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count)
+                    .putInt(inputX).putInt(inputY).putInt(inputZ).putInt(outputUnits).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            DataExtractor.commit(event, "csv", path, count, channel.size());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        try {
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static void flush(ByteBuffer out, FileChannel channel) throws IOException {
+        out.flip();
+        while(out.hasRemaining()) channel.write(out);
+        out.clear();
+    }
+
+    /**
+     * Parse csv line of integers into label byte and pixel bytes of sample
+     */
+    private static void parseLine(String line, byte[] sample, int outputUnits) {
+        int k = 0, val = -1;
+        for(int i = 0; i <= line.length(); ++i) {
+            char c = i < line.length() ? line.charAt(i) : ',';
+            if(c >= '0' && c <= '9') {
+                val = (val < 0 ? 0 : val*10) + (c - '0');
+                if(val > 255) throw new RuntimeException("Value is out of [0, 255]");
+            }
+            else if(c == ',') {
+                if(val < 0) throw new RuntimeException("Empty value "+k);
+                if(k >= sample.length) throw new RuntimeException("Expected "+(sample.length-1)+" values, found more");
+                sample[k++] = (byte) val;
+                val = -1;
+            }
+            else if(c != ' ' && c != '\r') throw new RuntimeException("Unexpected symbol '"+c+"'");
+        }
+        if(k != sample.length) throw new RuntimeException("Expected "+(sample.length-1)+" values, found "+(k-1));
+        if((sample[0] & 0xFF) >= outputUnits) throw new RuntimeException("Incorrect label "+(sample[0] & 0xFF));
+    }
+}
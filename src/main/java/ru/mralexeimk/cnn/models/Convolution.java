@@ -0,0 +1,295 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.enums.ActivationFunInterface;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.enums.PullingType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Convolution through im2col + Gemm.
+ * Windows of input are lowered into matrix (K.N*K.M, outN*outM): row (kx,ky) holds value under
+ * kernel cell (kx,ky) for every output cell. Kernels of depth D are rows of (D, K.N*K.M) matrix
+ * (Matrix3D buffer), so one Gemm gives all output depths in Matrix3D layout.
+ * Padding cells are 0 (BY_ZEROES) or average of the non-padding cells of the same window (BY_MEDIAN)
+ */
+public class Convolution {
+    /**
+     * Count of convolution cells per kernel computed at once by convertByKernelPulling()
+     */
+    private static final int TILE = 256;
+
+    /**
+     * @return Size of convolution result along one axis
+     */
+    public static int getOutputSize(int size, int kernelSize, int paddingSize, int stridingSize) {
+        return (size - kernelSize + 2*paddingSize)/stridingSize + 1;
+    }
+
+    /**
+     * Lower windows of A for kernel (kN,kM) into cols starting at colsOffset
+     * @return Count of output cells (columns of lowered matrix)
+     */
+    public static int im2col(Matrix A, int kN, int kM, int paddingSizeX, int paddingSizeY,
+                             PaddingFill paddingFill, int stridingSizeX, int stridingSizeY,
+                             double[] cols, int colsOffset) {
+        return im2col(A, kN, kM, paddingSizeX, paddingSizeY, paddingFill, stridingSizeX, stridingSizeY,
+                0, getOutputSize(A.getM(), kM, paddingSizeY, stridingSizeY), cols, colsOffset);
+    }
+
+    /**
+     * Same as im2col(), but only for output rows [outFrom, outTo)
+     */
+    private static int im2col(Matrix A, int kN, int kM, int paddingSizeX, int paddingSizeY,
+                              PaddingFill paddingFill, int stridingSizeX, int stridingSizeY,
+                              int outFrom, int outTo, double[] cols, int colsOffset) {
+        int outN = getOutputSize(A.getN(), kN, paddingSizeX, stridingSizeX);
+        int outM = getOutputSize(A.getM(), kM, paddingSizeY, stridingSizeY);
+        int P = outN*(outTo - outFrom);
+        double[] a = A.getBuffer();
+        double[] averages = null;
+        if(paddingFill == PaddingFill.BY_MEDIAN && (paddingSizeX > 0 || paddingSizeY > 0)) {
+            averages = getWindowAverages(A, kN, kM, paddingSizeX, paddingSizeY,
+                    stridingSizeX, stridingSizeY, outN, outM);
+        }
+        for(int ky = 0; ky < kM; ++ky) {
+            for(int kx = 0; kx < kN; ++kx) {
+                int row = colsOffset + (ky*kN + kx)*P;
+                for(int oy = outFrom; oy < outTo; ++oy) {
+                    int iy = oy*stridingSizeY - paddingSizeY + ky;
+                    int dst = row + (oy - outFrom)*outN;
+                    if(iy < 0 || iy >= A.getM()) {
+                        for(int ox = 0; ox < outN; ++ox) {
+                            cols[dst + ox] = averages == null ? 0 : averages[oy*outN + ox];
+                        }
+                        continue;
+                    }
+                    int src = A.index(0, iy);
+                    for(int ox = 0; ox < outN; ++ox) {
+                        int ix = ox*stridingSizeX - paddingSizeX + kx;
+                        if(ix >= 0 && ix < A.getN()) cols[dst + ox] = a[src + ix];
+                        else cols[dst + ox] = averages == null ? 0 : averages[oy*outN + ox];
+                    }
+                }
+            }
+        }
+        return P;
+    }
+
+    /**
+     * @return Average of non-padding cells of every window
+     */
+    private static double[] getWindowAverages(Matrix A, int kN, int kM, int paddingSizeX, int paddingSizeY,
+                                              int stridingSizeX, int stridingSizeY, int outN, int outM) {
+        double[] res = new double[outN*outM];
+        for(int oy = 0; oy < outM; ++oy) {
+            int yStart = oy*stridingSizeY - paddingSizeY;
+            int y0 = Math.max(0, yStart), y1 = Math.min(A.getM(), yStart + kM);
+            for(int ox = 0; ox < outN; ++ox) {
+                int xStart = ox*stridingSizeX - paddingSizeX;
+                int x0 = Math.max(0, xStart), x1 = Math.min(A.getN(), xStart + kN);
+                double sum = 0;
+                for(int y = y0; y < y1; ++y) {
+                    int row = A.index(0, y);
+                    for(int x = x0; x < x1; ++x) {
+                        sum += A.data[row + x];
+                    }
+                }
+                res[oy*outN + ox] = sum / (Math.max(0, y1 - y0) * Math.max(0, x1 - x0));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Convolutional operation on matrix A with kernel K
+     */
+    public static Matrix convert(Matrix A, Matrix K, int paddingSizeX, int paddingSizeY,
+                                 PaddingFill paddingFill, int stridingSizeX, int stridingSizeY) {
+        if(K.getN() > A.getN() || K.getM() > A.getM()) throw new RuntimeException("K.N > N or K.M > M");
+        int kk = K.getN()*K.getM();
+        Matrix res = new Matrix(getOutputSize(A.getN(), K.getN(), paddingSizeX, stridingSizeX),
+                getOutputSize(A.getM(), K.getM(), paddingSizeY, stridingSizeY));
+        int P = res.getN()*res.getM();
+        double[] cols = new double[kk*P];
+        im2col(A, K.getN(), K.getM(), paddingSizeX, paddingSizeY, paddingFill, stridingSizeX, stridingSizeY, cols, 0);
+        Matrix kernel = K.isContiguous() ? K : K.clone();
+        Gemm.multiply(1, P, kk, kernel.getBuffer(), kernel.getOffset(), kk, cols, 0, P,
+                res.getBuffer(), 0, P, false);
+        return res;
+    }
+
+    /**
+     * @return Size of scratch buffer for im2col of (N,M) input with kernel (kN,kM)
+     */
+    public static int getColsSize(int N, int M, int kN, int kM, int paddingSize, int stridingSize) {
+        return kN*kM*getOutputSize(N, kN, paddingSize, stridingSize)*getOutputSize(M, kM, paddingSize, stridingSize);
+    }
+
+    /**
+     * Convolution of sum of all depths of A with every kernel of K (depth i of result - kernel i).
+     * With stridingSize > 1 only every stridingSize'th depth of A and K is used, other depths of result are 0
+     */
+    public static Matrix3D convertByMergeKernel(Matrix3D A, Matrix3D K, int paddingSize,
+                                                PaddingFill paddingFill, int stridingSize) {
+        Matrix3D res = new Matrix3D(getOutputSize(A.getN(), K.getN(), paddingSize, stridingSize),
+                getOutputSize(A.getM(), K.getM(), paddingSize, stridingSize), K.getD());
+        return convertByMergeKernel(A, K, paddingSize, paddingFill, stridingSize, new Matrix(A.getN(), A.getM()),
+                new double[getColsSize(A.getN(), A.getM(), K.getN(), K.getM(), paddingSize, stridingSize)], res);
+    }
+
+    /**
+     * Same as convertByMergeKernel(A, K, paddingSize, paddingFill, stridingSize), but written into res
+     * with scratch buffers merged (A.N,A.M) and cols (see getColsSize())
+     * @return res
+     */
+    public static Matrix3D convertByMergeKernel(Matrix3D A, Matrix3D K, int paddingSize,
+                                                PaddingFill paddingFill, int stridingSize,
+                                                Matrix merged, double[] cols, Matrix3D res) {
+        merge(A, stridingSize, merged);
+        if(K.getN() > merged.getN() || K.getM() > merged.getM()) throw new RuntimeException("K.N > N or K.M > M");
+        int kk = K.getN()*K.getM();
+        int P = res.getN()*res.getM();
+        im2col(merged, K.getN(), K.getM(), paddingSize, paddingSize, paddingFill, stridingSize, stridingSize, cols, 0);
+        if(stridingSize > 1) Arrays.fill(res.getBuffer(), 0);
+        int kernels = (K.getD() + stridingSize - 1)/stridingSize;
+        Gemm.multiply(kernels, P, kk, K.getBuffer(), 0, stridingSize*kk, cols, 0, P,
+                res.getBuffer(), 0, stridingSize*P, false);
+        return res;
+    }
+
+    /**
+     * Convolution of depth i/(K.D/A.D) of A with kernel i of K (depth i of result)
+     */
+    public static Matrix3D convertByKernel(Matrix3D A, Matrix3D K, int paddingSize,
+                                           PaddingFill paddingFill, int stridingSize) {
+        Matrix3D res = new Matrix3D(getOutputSize(A.getN(), K.getN(), paddingSize, stridingSize),
+                getOutputSize(A.getM(), K.getM(), paddingSize, stridingSize), K.getD());
+        return convertByKernel(A, K, paddingSize, paddingFill, stridingSize,
+                new double[getColsSize(A.getN(), A.getM(), K.getN(), K.getM(), paddingSize, stridingSize)], res);
+    }
+
+    /**
+     * Same as convertByKernel(A, K, paddingSize, paddingFill, stridingSize), but written into res
+     * with scratch buffer cols (see getColsSize())
+     * @return res
+     */
+    public static Matrix3D convertByKernel(Matrix3D A, Matrix3D K, int paddingSize,
+                                           PaddingFill paddingFill, int stridingSize,
+                                           double[] cols, Matrix3D res) {
+        if(K.getN() > A.getN() || K.getM() > A.getM()) throw new RuntimeException("K.N > N or K.M > M");
+        int len = K.getD()/A.getD();
+        if(len == 0) throw new RuntimeException("Count of kernels is less than depth");
+        int kk = K.getN()*K.getM();
+        int P = res.getN()*res.getM();
+        for(int i = 0; i < K.getD(); i += len) {
+            int count = Math.min(len, K.getD() - i);
+            im2col(A.get(i/len), K.getN(), K.getM(), paddingSize, paddingSize, paddingFill,
+                    stridingSize, stridingSize, cols, 0);
+            Gemm.multiply(count, P, kk, K.getBuffer(), i*kk, kk, cols, 0, P,
+                    res.getBuffer(), i*P, P, false);
+        }
+        return res;
+    }
+
+    /**
+     * Sum of every stridingSize'th depth of A written into merged (A.N,A.M)
+     * @return merged
+     */
+    public static Matrix merge(Matrix3D A, int stridingSize, Matrix merged) {
+        merged.replace(0, 0, A.get(0));
+        for(int j = stridingSize; j < A.getD(); j += stridingSize) {
+            merged.sum(A.get(j));
+        }
+        return merged;
+    }
+
+    /**
+     * @return Size of scratch tile of convertByKernelPulling() for (outN,outM) convolution result
+     */
+    public static int getTileSize(int outN, int outM, int size, int count) {
+        return count*getBandRows(outN, outM, size)*size*outN;
+    }
+
+    /**
+     * @return Count of rows of pulling result computed at once by convertByKernelPulling()
+     */
+    private static int getBandRows(int outN, int outM, int size) {
+        return Math.max(1, Math.min(outM/size, TILE/(size*outN)));
+    }
+
+    /**
+     * Fused convolution block: convolution of A (no padding, stride 1) with kernels [from, from+count) of K,
+     * plus bias of kernel, activation and pulling by (size,size) windows written into depths [from, from+count)
+     * of res (outN/size,outM/size). Convolution is computed by bands of rows into tile, so its
+     * full-resolution result is never stored. MAX/MIN windows with monotonic activation are activated once
+     * (after pulling of raw values)
+     * @param cols Scratch buffer of getColsSize() values for A and K
+     * @param tile Scratch buffer of getTileSize() values
+     * @return res
+     */
+    public static Matrix3D convertByKernelPulling(Matrix A, Matrix3D K, int from, int count, List<Double> biases,
+                                                  ActivationFunType activationFunType, PullingType pullingType,
+                                                  int size, double[] cols, double[] tile, Matrix3D res) {
+        if(K.getN() > A.getN() || K.getM() > A.getM()) throw new RuntimeException("K.N > N or K.M > M");
+        if(activationFunType == ActivationFunType.SOFT_MAX) throw new RuntimeException("SOFT_MAX cannot be fused");
+        int outN = getOutputSize(A.getN(), K.getN(), 0, 1);
+        if(res.getN() != outN/size || res.getM() != getOutputSize(A.getM(), K.getM(), 0, 1)/size) {
+            throw new RuntimeException("Incorrect pulling result shapes");
+        }
+        int kk = K.getN()*K.getM(), resP = res.getN()*res.getM();
+        int rows = getBandRows(outN, res.getM()*size, size);
+        double[] r = res.getBuffer();
+        ActivationFunInterface activation = activationFunType.getActivationFunInterface();
+        boolean pullFirst = pullingType != PullingType.AVERAGE && activationFunType.isMonotonic();
+        for(int py = 0; py < res.getM(); py += rows) {
+            int band = Math.min(rows, res.getM() - py), bandP = band*size*outN;
+            im2col(A, K.getN(), K.getM(), 0, 0, PaddingFill.BY_ZEROES, 1, 1, py*size, (py+band)*size, cols, 0);
+            Gemm.multiply(count, bandP, kk, K.getBuffer(), from*kk, kk, cols, 0, bandP, tile, 0, bandP, false);
+            for(int c = 0; c < count; ++c) {
+                double bias = biases.get(from + c);
+                if(!pullFirst) {
+                    for(int i = c*bandP, end = i + bandP; i < end; ++i) {
+                        tile[i] = activation.activationFun(tile[i] + bias);
+                    }
+                }
+                for(int y = 0; y < band; ++y) {
+                    int dst = (from + c)*resP + (py + y)*res.getN();
+                    for(int px = 0; px < res.getN(); ++px) {
+                        int offset = c*bandP + y*size*outN + px*size;
+                        double val;
+                        if(pullFirst) {
+                            val = activation.activationFun(bias + pull(pullingType,
+                                    pullingType == PullingType.MAX ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY,
+                                    tile, offset, outN, size));
+                            val = pullingType == PullingType.MAX ? Math.max(0, val) : Math.min(Double.MAX_VALUE, val);
+                        }
+                        else {
+                            val = pull(pullingType, pullingType == PullingType.MIN ? Double.MAX_VALUE : 0,
+                                    tile, offset, outN, size);
+                            if(pullingType == PullingType.AVERAGE) val /= size*size;
+                        }
+                        r[dst + px] = val;
+                    }
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return Pulling of (size,size) window of tile starting at offset (rows of outN values) starting with val
+     */
+    private static double pull(PullingType pullingType, double val, double[] tile, int offset, int outN, int size) {
+        for(int y = 0; y < size; ++y) {
+            for(int i = offset + y*outN, end = i + size; i < end; ++i) {
+                if(pullingType == PullingType.MAX) val = Math.max(val, tile[i]);
+                else if(pullingType == PullingType.MIN) val = Math.min(val, tile[i]);
+                else val += tile[i];
+            }
+        }
+        return val;
+    }
+}
@@ -0,0 +1,70 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.enums.PaddingFill;
+
+/**
+ * Backward pass of valid convolution with stride 1 (output (N-kN+1, M-kM+1) of input (N,M)).
+ * Both gradients are one im2col and one Gemm instead of loops over windows of every output cell.
+ * Scratch buffers are taken from Layer.Workspace (grown on demand), so training steps don't allocate them
+ */
+public class ConvolutionGradient {
+    /**
+     * Add gradient of kernels [from, from+count) of dif: correlation of I with delta = errors*O*(1-O)
+     * of output depths [from, from+count), i.e. sum of windows of I weighted by delta of their output cell
+     */
+    public static void addKernelGradient(Matrix I, Matrix3D O, Matrix3D errors, int from, int count, Matrix3D dif,
+                                         Layer.Workspace workspace) {
+        int kk = dif.getN()*dif.getM(), P = O.getN()*O.getM();
+        double[] cols = workspace.gradCols = getBuffer(workspace.gradCols, kk*P);
+        Convolution.im2col(I, dif.getN(), dif.getM(), 0, 0, PaddingFill.BY_ZEROES, 1, 1, cols, 0);
+        double[] delta = workspace.delta = getBuffer(workspace.delta, P*count);
+        for(int k = 0; k < P*count; ++k) {
+            double o = O.getBuffer()[from*P + k];
+            delta[k] = errors.getBuffer()[from*P + k] * o * (1 - o);
+        }
+        Gemm.multiply(new Matrix(delta, 0, P, P, count), false, new Matrix(cols, 0, P, P, kk), true,
+                new Matrix(dif.getBuffer(), from*kk, kk, kk, count), true);
+    }
+
+    /**
+     * Add gradient of input of layer convolution to res (input shapes): output depth z of E is convolved
+     * with kernel z of K from input depth z/div, so depth d of res gets full convolutions of output depths
+     * [d*div, (d+1)*div) with their kernels (correlation of E padded by kernel size - 1 with flipped K),
+     * i.e. every error is spread over its window with weights of its kernel.
+     * Padded errors of all output depths are lowered by one im2col, then every depth of res is one Gemm
+     * over all kernels of its output depths
+     * @return res
+     */
+    public static Matrix3D addInputGradient(Matrix3D E, Matrix3D K, int div, Matrix3D res, Layer.Workspace workspace) {
+        int kN = K.getN(), kM = K.getM(), kk = kN*kM, P = res.getN()*res.getM();
+        if(res.getN() != E.getN() + kN - 1 || res.getM() != E.getM() + kM - 1
+                || res.getD() != (E.getD() + div - 1)/div || K.getD() != E.getD()) {
+            throw new RuntimeException("Incorrect input gradient shapes "+res.getShapes());
+        }
+        double[] flipped = workspace.kernels = getBuffer(workspace.kernels, E.getD()*kk);
+        for(int z = 0; z < E.getD(); ++z) {
+            for(int y = 0; y < kM; ++y) {
+                for(int x = 0; x < kN; ++x) {
+                    flipped[z*kk + (kM-1-y)*kN + (kN-1-x)] = K.get(x, y, z);
+                }
+            }
+        }
+        double[] cols = workspace.gradCols = getBuffer(workspace.gradCols, E.getD()*kk*P);
+        for(int z = 0; z < E.getD(); ++z) {
+            Convolution.im2col(E.get(z), kN, kM, kN - 1, kM - 1, PaddingFill.BY_ZEROES, 1, 1, cols, z*kk*P);
+        }
+        for(int d = 0; d < res.getD(); ++d) {
+            int from = d*div, count = Math.min(div, E.getD() - from);
+            Gemm.multiply(1, P, count*kk, flipped, from*kk, count*kk, cols, from*kk*P, P,
+                    res.getBuffer(), d*P, P, true);
+        }
+        return res;
+    }
+
+    /**
+     * @return buf if it holds len values, else new buffer
+     */
+    private static double[] getBuffer(double[] buf, int len) {
+        return buf != null && buf.length >= len ? buf : new double[len];
+    }
+}
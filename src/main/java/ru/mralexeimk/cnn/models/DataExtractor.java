@@ -1,41 +1,201 @@
 package ru.mralexeimk.cnn.models;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import ru.mralexeimk.cnn.events.DatasetLoadEvent;
+import ru.mralexeimk.cnn.other.Dataset;
+import ru.mralexeimk.cnn.other.DatasetIterator;
 import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.other.Pair;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
 
 public class DataExtractor {
+    /**
+     * Read all samples of csv file (see streamFromFile()) into memory
+     */
     public static ExtractedData extractFromFile(String path, int inputX, int inputY, int inputZ, int outputUnits) {
+        DatasetLoadEvent event = new DatasetLoadEvent();
+        event.begin();
         ExtractedData data = new ExtractedData();
-        try {
-            File file = new File(DataExtractor.class.getResource(path).toURI());
-            String line;
-            Scanner sc = new Scanner(file);
-            while (sc.hasNextLine()) {
-                line = sc.nextLine();
-                String[] spl = line.split(",");
-                int target = Integer.parseInt(spl[0]);
-                List<Double> listInputs = new ArrayList<>();
-                for (int k = 1; k < spl.length; ++k) {
-                    double t = Double.parseDouble(spl[k]);
-                    t = (t / 255.0) * 0.99 + 0.01;
-                    listInputs.add(t);
-                }
-                Matrix3D inputs = new Matrix3D(inputX, inputY, inputZ, listInputs);
-                Matrix targets = new Matrix(1, outputUnits, 0.01);
-                targets.set(0, target, 0.99);
-                data.getInputs().add(inputs);
-                data.getOutputs().add(targets);
+        try(CsvIterator it = new CsvIterator(path, inputX, inputY, inputZ, outputUnits)) {
+            while(it.hasNext()) {
+                Pair<Matrix3D, Matrix> sample = it.next();
+                data.getInputs().add(sample.getFirst());
+                data.getOutputs().add(sample.getSecond());
             }
-            sc.close();
-        } catch (Exception e) {}
+            commit(event, "csv", path, data.getLen(), it.in.getCount());
+        }
         return data;
     }
+
+    /**
+     * End event of dataset load and commit it if it is recorded
+     */
+    static void commit(DatasetLoadEvent event, String format, String path, int samples, long bytes) {
+        event.end();
+        if(event.shouldCommit()) {
+            event.format = format;
+            event.path = path;
+            event.samples = samples;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Dataset of csv file (line: label,pixel,pixel,... with pixels in [0, 255]) read line by line on every iteration
+     * @param path Path of resource or (if there is no such resource) of file
+     */
+    public static Dataset streamFromFile(String path, int inputX, int inputY, int inputZ, int outputUnits) {
+        return () -> new CsvIterator(path, inputX, inputY, inputZ, outputUnits);
+    }
+
+    /**
+     * Dataset of csv file converted once into uint8 dataset file cache (see ByteDataset),
+     * later calls only map the cache
+     */
+    public static ByteDataset cacheFromFile(String path, File cache, int inputX, int inputY, int inputZ, int outputUnits) {
+        try {
+            if(!cache.exists()) ByteDataset.write(path, cache, inputX, inputY, inputZ, outputUnits);
+            return ByteDataset.open(cache);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't cache dataset "+path+" into "+cache, e);
+        }
+    }
+
+    /**
+     * @return Stream of resource or (if there is no such resource) of file
+     */
+    public static InputStream open(String path) throws IOException {
+        InputStream res = DataExtractor.class.getResourceAsStream(path);
+        if(res == null) res = new FileInputStream(path);
+        return res;
+    }
+
+    /**
+     * @return Sample of csv line
+     */
+    public static Pair<Matrix3D, Matrix> parseLine(String line, int inputX, int inputY, int inputZ, int outputUnits) {
+        String[] spl = line.split(",");
+        Matrix3D inputs = new Matrix3D(inputX, inputY, inputZ);
+        double[] buf = inputs.getBuffer();
+        if(spl.length - 1 != buf.length) {
+            throw new RuntimeException("Expected "+buf.length+" values, found "+(spl.length - 1));
+        }
+        for(int k = 1; k < spl.length; ++k) {
+            double t = Double.parseDouble(spl[k]);
+            buf[k - 1] = (t / 255.0) * 0.99 + 0.01;
+        }
+        int target = Integer.parseInt(spl[0].trim());
+        if(target < 0 || target >= outputUnits) throw new RuntimeException("Incorrect label "+target);
+        Matrix targets = new Matrix(1, outputUnits, 0.01);
+        targets.set(0, target, 0.99);
+        return new Pair<>(inputs, targets);
+    }
+
+    /**
+     * Stream that counts bytes read from it
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int res = super.read();
+            if(res >= 0) ++count;
+            return res;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int res = super.read(b, off, len);
+            if(res > 0) count += res;
+            return res;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long res = super.skip(n);
+            count += res;
+            return res;
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Iterator of csv lines, its reader is closed at the end of file, on error or by close()
+     */
+    private static class CsvIterator implements DatasetIterator {
+        private final String path;
+        private final int inputX, inputY, inputZ, outputUnits;
+        private CountingInputStream in;
+        private BufferedReader reader;
+        private String line;
+        private int lineNumber;
+
+        private CsvIterator(String path, int inputX, int inputY, int inputZ, int outputUnits) {
+            this.path = path;
+            this.inputX = inputX;
+            this.inputY = inputY;
+            this.inputZ = inputZ;
+            this.outputUnits = outputUnits;
+            try {
+                in = new CountingInputStream(open(path));
+                reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't open dataset "+path, e);
+            }
+            advance();
+        }
+
+        private void advance() {
+            try {
+                do {
+                    line = reader.readLine();
+                    ++lineNumber;
+                } while(line != null && line.isBlank());
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Can't read dataset "+path, e);
+            }
+            if(line == null) close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return line != null;
+        }
+
+        @Override
+        public Pair<Matrix3D, Matrix> next() {
+            if(line == null) throw new NoSuchElementException();
+            Pair<Matrix3D, Matrix> res;
+            try {
+                res = parseLine(line, inputX, inputY, inputZ, outputUnits);
+            } catch (RuntimeException e) {
+                close();
+                throw new RuntimeException("Incorrect line "+lineNumber+" of "+path+": "+e.getMessage(), e);
+            }
+            advance();
+            return res;
+        }
+
+        @Override
+        public void close() {
+            line = null;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't close dataset "+path, e);
+            }
+        }
+    }
 }
@@ -0,0 +1,79 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.enums.ActivationFunInterface;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fused step of dense layer act(W*x + bias), W is (inputs,units) Matrix (row per unit).
+ * Result gets bias and activation while it is in cache and is written straight into output buffer,
+ * SOFT_MAX values are divided by their sum in the second pass (as in Layer.applyActivationFun())
+ */
+public class Dense {
+    /**
+     * Count of units computed and activated at once by forward()
+     */
+    private static final int BLOCK = 64;
+
+    /**
+     * out = act(W*x + bias) for x of W.N values from xOffset, written into W.M values of out from outOffset
+     */
+    public static void forward(Matrix W, double[] x, int xOffset, double bias, ActivationFunType activationFunType,
+                               double[] out, int outOffset) {
+        Kernels kernels = Kernels.get();
+        double sum = 0;
+        for(int i = 0; i < W.getM(); i += BLOCK) {
+            int rows = Math.min(BLOCK, W.getM() - i);
+            Arrays.fill(out, outOffset + i, outOffset + i + rows, 0);
+            kernels.gemv(rows, W.getN(), W.getBuffer(), W.index(0, i), W.getStride(), x, xOffset, 1,
+                    out, outOffset + i, 1);
+            sum = activate(out, outOffset + i, out, outOffset + i, rows, bias, activationFunType, sum);
+        }
+        if(activationFunType == ActivationFunType.SOFT_MAX) normalize(out, outOffset, W.getM(), sum);
+    }
+
+    /**
+     * act(W*x + bias) for every row x of X (batch,inputs) through one Gemm: every row of product gets bias
+     * and activation on the way into (1,units,1) Matrix3D of its sample
+     * @return Result of every sample
+     */
+    public static List<Matrix3D> forwardBatch(Matrix X, Matrix W, double bias, ActivationFunType activationFunType) {
+        Matrix res = MatrixExtractor.getMultiply(X, false, W, true);
+        List<Matrix3D> next = new ArrayList<>();
+        for(int y = 0; y < res.getM(); ++y) {
+            Matrix3D m = new Matrix3D(1, res.getN(), 1);
+            double sum = activate(res.getBuffer(), res.index(0, y), m.getBuffer(), 0, res.getN(), bias, activationFunType, 0);
+            if(activationFunType == ActivationFunType.SOFT_MAX) normalize(m.getBuffer(), 0, res.getN(), sum);
+            next.add(m);
+        }
+        return next;
+    }
+
+    /**
+     * dst[i] = act(src[i] + bias) for len values
+     * @return sum plus written values
+     */
+    private static double activate(double[] src, int srcOffset, double[] dst, int dstOffset, int len, double bias,
+                                   ActivationFunType activationFunType, double sum) {
+        ActivationFunInterface activation = activationFunType.getActivationFunInterface();
+        for(int k = 0; k < len; ++k) {
+            double val = activation.activationFun(src[srcOffset + k] + bias);
+            dst[dstOffset + k] = val;
+            sum += val;
+        }
+        return sum;
+    }
+
+    /**
+     * Divide len SOFT_MAX values by their sum
+     */
+    private static void normalize(double[] a, int offset, int len, double sum) {
+        if(sum == 0 && len != 0) throw new ArithmeticException("SOFT_MAX sum cannot be 0!");
+        for(int k = offset; k < offset + len; ++k) {
+            a[k] /= sum;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package ru.mralexeimk.cnn.models;
+
+import java.util.Arrays;
+
+/**
+ * Matrix multiplication C = A*B over row-major buffers.
+ * A has m rows and k columns, B has k rows and n columns, C has m rows and n columns,
+ * lda/ldb/ldc are distances between rows (Matrix stride).
+ * Register-tiled micro-kernels live in Kernels (scalar or vectorized)
+ */
+public class Gemm {
+    /**
+     * Block sizes: B panel (KC,NC) stays in L2, A block (MC,KC) in L1/L2
+     */
+    private static final int MC = 64;
+    private static final int KC = 128;
+    private static final int NC = 256;
+
+    /**
+     * @return A*B as new matrix
+     */
+    public static Matrix multiply(Matrix A, Matrix B) {
+        Matrix res = new Matrix(B.getN(), A.getM());
+        multiply(A, B, res, false);
+        return res;
+    }
+
+    /**
+     * C = A*B (or C += A*B if accumulate)
+     */
+    public static void multiply(Matrix A, Matrix B, Matrix C, boolean accumulate) {
+        if(A.getN() != B.getM() || C.getM() != A.getM() || C.getN() != B.getN()) {
+            throw new RuntimeException("Can't multiply matrices "+A.getShapes()+" * "+B.getShapes()+
+                    " into "+C.getShapes());
+        }
+        multiply(A.getM(), B.getN(), A.getN(),
+                A.getBuffer(), A.getOffset(), A.getStride(),
+                B.getBuffer(), B.getOffset(), B.getStride(),
+                C.getBuffer(), C.getOffset(), C.getStride(), accumulate);
+    }
+
+    /**
+     * C = op(A)*op(B) (or C += op(A)*op(B) if accumulate), op(X) is X^T if X is transposed, else X.
+     * No transposed copy of operand is made: transposed blocks are packed while multiplying
+     */
+    public static void multiply(Matrix A, boolean transposeA, Matrix B, boolean transposeB, Matrix C, boolean accumulate) {
+        int m = transposeA ? A.getN() : A.getM(), k = transposeA ? A.getM() : A.getN();
+        int n = transposeB ? B.getM() : B.getN();
+        if(k != (transposeB ? B.getN() : B.getM()) || C.getM() != m || C.getN() != n) {
+            throw new RuntimeException("Can't multiply matrices "+A.getShapes()+(transposeA ? "^T" : "")+" * "+
+                    B.getShapes()+(transposeB ? "^T" : "")+" into "+C.getShapes());
+        }
+        if(transposeA && transposeB) {
+            clear(m, n, C.getBuffer(), C.getOffset(), C.getStride(), accumulate);
+            multiplyBlocked(m, n, k, A.getBuffer(), A.getOffset(), A.getStride(), true,
+                    B.getBuffer(), B.getOffset(), B.getStride(), true, C.getBuffer(), C.getOffset(), C.getStride());
+        }
+        else if(transposeA) {
+            multiplyTransposedA(m, n, k, A.getBuffer(), A.getOffset(), A.getStride(),
+                    B.getBuffer(), B.getOffset(), B.getStride(), C.getBuffer(), C.getOffset(), C.getStride(), accumulate);
+        }
+        else if(transposeB) {
+            multiplyTransposedB(m, n, k, A.getBuffer(), A.getOffset(), A.getStride(),
+                    B.getBuffer(), B.getOffset(), B.getStride(), C.getBuffer(), C.getOffset(), C.getStride(), accumulate);
+        }
+        else multiply(A, B, C, accumulate);
+    }
+
+    /**
+     * C = A^T*B (or C += A^T*B if accumulate) for A stored as (k,m): blocked like multiply(),
+     * every (MC,KC) block of A^T is packed before its micro-kernels. Vector B (n = 1) is done
+     * as rows of A weighted by B
+     */
+    public static void multiplyTransposedA(int m, int n, int k,
+                                           double[] a, int aOffset, int lda,
+                                           double[] b, int bOffset, int ldb,
+                                           double[] c, int cOffset, int ldc, boolean accumulate) {
+        clear(m, n, c, cOffset, ldc, accumulate);
+        if(n == 1 && ldc == 1) {
+            Kernels kernels = Kernels.get();
+            for(int p = 0; p < k; ++p) {
+                kernels.axpy(c, cOffset, b[bOffset + p*ldb], a, aOffset + p*lda, m);
+            }
+            return;
+        }
+        multiplyBlocked(m, n, k, a, aOffset, lda, true, b, bOffset, ldb, false, c, cOffset, ldc);
+    }
+
+    /**
+     * C = A*B^T (or C += A*B^T if accumulate) for B stored as (k,n): cells of C are dot products of rows
+     * of A and B, computed by (MC,KC) blocks of B for every row of A
+     */
+    public static void multiplyTransposedB(int m, int n, int k,
+                                           double[] a, int aOffset, int lda,
+                                           double[] b, int bOffset, int ldb,
+                                           double[] c, int cOffset, int ldc, boolean accumulate) {
+        clear(m, n, c, cOffset, ldc, accumulate);
+        Kernels kernels = Kernels.get();
+        for(int pp = 0; pp < k; pp += KC) {
+            int kb = Math.min(KC, k - pp);
+            for(int jj = 0; jj < n; jj += MC) {
+                int jb = Math.min(MC, n - jj);
+                for(int i = 0; i < m; ++i) {
+                    kernels.gemv(jb, kb, b, bOffset + jj*ldb + pp, ldb, a, aOffset + i*lda + pp, 1,
+                            c, cOffset + i*ldc + jj, 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Zero (m,n) C unless accumulate
+     */
+    private static void clear(int m, int n, double[] c, int cOffset, int ldc, boolean accumulate) {
+        if(!accumulate) {
+            for(int i = 0; i < m; ++i) {
+                int row = cOffset + i*ldc;
+                Arrays.fill(c, row, row + n, 0);
+            }
+        }
+    }
+
+    /**
+     * C = A*B (or C += A*B if accumulate) over raw buffers
+     * @param m Rows of A and C
+     * @param n Columns of B and C
+     * @param k Columns of A and rows of B
+     */
+    public static void multiply(int m, int n, int k,
+                                double[] a, int aOffset, int lda,
+                                double[] b, int bOffset, int ldb,
+                                double[] c, int cOffset, int ldc, boolean accumulate) {
+        clear(m, n, c, cOffset, ldc, accumulate);
+        if(m == 0 || n == 0 || k == 0) return;
+        if(n == 1) {
+            Kernels.get().gemv(m, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+            return;
+        }
+        multiplyBlocked(m, n, k, a, aOffset, lda, false, b, bOffset, ldb, false, c, cOffset, ldc);
+    }
+
+    /**
+     * C += op(A)*op(B) by (KC,NC) panels of op(B) and (MC,KC) blocks of op(A). Transposed A is stored as (k,m)
+     * and transposed B as (n,k): their blocks are packed row-major into scratch buffers, others are read in place
+     */
+    private static void multiplyBlocked(int m, int n, int k,
+                                        double[] a, int aOffset, int lda, boolean transposeA,
+                                        double[] b, int bOffset, int ldb, boolean transposeB,
+                                        double[] c, int cOffset, int ldc) {
+        if(m == 0 || n == 0 || k == 0) return;
+        Kernels kernels = Kernels.get();
+        double[] packedA = transposeA ? new double[Math.min(MC, m)*Math.min(KC, k)] : null;
+        double[] packedB = transposeB ? new double[Math.min(KC, k)*Math.min(NC, n)] : null;
+        for(int kk = 0; kk < k; kk += KC) {
+            int kb = Math.min(KC, k - kk);
+            for(int jj = 0; jj < n; jj += NC) {
+                int jb = Math.min(NC, n - jj);
+                double[] panel = b;
+                int panelOffset = bOffset + kk*ldb + jj, panelStride = ldb;
+                if(transposeB) {
+                    pack(kb, jb, b, bOffset + jj*ldb + kk, ldb, packedB);
+                    panel = packedB;
+                    panelOffset = 0;
+                    panelStride = jb;
+                }
+                for(int ii = 0; ii < m; ii += MC) {
+                    int ib = Math.min(MC, m - ii);
+                    if(transposeA) {
+                        pack(ib, kb, a, aOffset + kk*lda + ii, lda, packedA);
+                        kernels.gemmBlock(ib, jb, kb, packedA, 0, kb,
+                                panel, panelOffset, panelStride, c, cOffset + ii*ldc + jj, ldc);
+                    }
+                    else {
+                        kernels.gemmBlock(ib, jb, kb, a, aOffset + ii*lda + kk, lda,
+                                panel, panelOffset, panelStride, c, cOffset + ii*ldc + jj, ldc);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write transposed (rows,cols) block of source into res as row-major (rows,cols):
+     * res[r*cols + q] = src[srcOffset + q*ld + r]
+     */
+    private static void pack(int rows, int cols, double[] src, int srcOffset, int ld, double[] res) {
+        for(int q = 0; q < cols; ++q) {
+            int row = srcOffset + q*ld;
+            for(int r = 0; r < rows; ++r) {
+                res[r*cols + q] = src[row + r];
+            }
+        }
+    }
+}
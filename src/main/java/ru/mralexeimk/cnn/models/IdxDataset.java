@@ -0,0 +1,72 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.events.DatasetLoadEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Dataset of uncompressed IDX ubyte files (format of MNIST): images (count, rows, columns)
+ * or (count, size) and labels (count). Both files are memory-mapped (see MappedDataset),
+ * sample i is (columns, rows, 1) Matrix3D
+ */
+public class IdxDataset extends MappedDataset {
+    private static final int UBYTE = 0x08;
+
+    private IdxDataset(ByteBuffer images, int[] imageDims, ByteBuffer labels, int[] labelDims, int outputUnits) {
+        len = imageDims[0];
+        inputX = imageDims[imageDims.length-1];
+        inputY = imageDims.length == 3 ? imageDims[1] : 1;
+        inputZ = 1;
+        this.outputUnits = outputUnits;
+        setPixels(images, 4 + 4*imageDims.length, inputX*inputY);
+        setLabels(labels, 4 + 4*labelDims.length, 1);
+    }
+
+    public static IdxDataset open(File images, File labels, int outputUnits) throws IOException {
+        DatasetLoadEvent event = new DatasetLoadEvent();
+        event.begin();
+        ByteBuffer imagesBuf = map(images), labelsBuf = map(labels);
+        int[] imageDims = readDims(imagesBuf, images), labelDims = readDims(labelsBuf, labels);
+        if(imageDims.length != 2 && imageDims.length != 3) {
+            throw new IOException("Expected 2 or 3 dimensions of images, found "+imageDims.length+" in "+images);
+        }
+        if(labelDims.length != 1 || labelDims[0] != imageDims[0]) {
+            throw new IOException("Labels of "+labels+" don't match "+imageDims[0]+" images");
+        }
+        IdxDataset res = new IdxDataset(imagesBuf, imageDims, labelsBuf, labelDims, outputUnits);
+        for(int i = 0; i < res.getLen(); ++i) {
+            if(res.getLabel(i) >= outputUnits) throw new IOException("Incorrect label "+res.getLabel(i)+" in "+labels);
+        }
+        DataExtractor.commit(event, "idx", images.getPath(), res.getLen(), imagesBuf.limit() + labelsBuf.limit());
+        return res;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    /**
+     * @return Dimensions from header of IDX ubyte file
+     */
+    private static int[] readDims(ByteBuffer buf, File file) throws IOException {
+        if(buf.limit() < 4 || buf.get(0) != 0 || buf.get(1) != 0 || buf.get(2) != UBYTE) {
+            throw new IOException("Not an IDX ubyte file: "+file);
+        }
+        int[] dims = new int[buf.get(3)];
+        if(dims.length == 0 || buf.limit() < 4 + 4*dims.length) throw new IOException("Incorrect IDX header: "+file);
+        long size = 1;
+        for(int i = 0; i < dims.length; ++i) {
+            dims[i] = buf.getInt(4 + 4*i);
+            size *= dims[i];
+        }
+        if(buf.limit() != 4 + 4L*dims.length + size) throw new IOException("Truncated IDX file: "+file);
+        return dims;
+    }
+}
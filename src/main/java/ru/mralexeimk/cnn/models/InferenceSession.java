@@ -0,0 +1,60 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.events.LayerForwardEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forward pass of NeuralNetwork with own data and scratch buffers.
+ * Session only reads weights of the network, so every thread can query through its own session
+ * without locking and without copies of weights (weights must not be trained meanwhile).
+ * Convolution with pulling of the next FilterLayer is done in one pass where layer supports it
+ * (see Layer.doFusedStepInto()), data of such FilterLayer is not kept.
+ * Matrix returned by query() is overwritten by the next query of the same session
+ */
+public class InferenceSession {
+    private final List<Layer> layers;
+    private final List<Matrix3D> data;
+    private final List<Layer.Workspace> workspaces;
+
+    public InferenceSession(NeuralNetwork nn) {
+        layers = new ArrayList<>(nn.getLayers());
+        data = new ArrayList<>();
+        workspaces = new ArrayList<>();
+        for(int i = 0; i < layers.size(); ++i) {
+            Layer layer = layers.get(i);
+            boolean fused = i > 0 && layers.get(i-1).isFusedWithPulling();
+            data.add(fused ? null : new Matrix3D(layer.getSizeX(), layer.getSizeY(), layer.getSizeD()));
+            workspaces.add(fused ? null : layer.createWorkspace());
+        }
+    }
+
+    public Matrix query(Matrix3D input) {
+        Layer il = layers.get(0);
+        if(input.getN() != il.getSizeX() || input.getM() != il.getSizeY() || input.getD() != il.getSizeD()) {
+            throw new RuntimeException("Incorrect query input "+input.getShapes()+" for "+il);
+        }
+        Matrix3D m = input;
+        for(int i = 0; i < layers.size()-1; ++i) {
+            LayerForwardEvent event = new LayerForwardEvent();
+            event.begin();
+            Layer layer = layers.get(i);
+            if(layer.isFusedWithPulling()) {
+                layer.doFusedStepInto(m, data.get(i+2), workspaces.get(i));
+                m = data.get(i+2);
+                event.finish(i, layer, 1);
+                ++i;
+                continue;
+            }
+            layer.doStepInto(m, data.get(i+1), workspaces.get(i));
+            m = data.get(i+1);
+            event.finish(i, layer, 1);
+        }
+        return m.getMatrix();
+    }
+
+    public int queryMax(Matrix3D input) {
+        return query(input).getMaxIndex();
+    }
+}
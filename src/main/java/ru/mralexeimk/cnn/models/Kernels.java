@@ -0,0 +1,84 @@
+package ru.mralexeimk.cnn.models;
+
+/**
+ * Inner loops of Matrix operations over contiguous runs of row-major buffers.
+ * Vectorized implementation (jdk.incubator.vector) is used when the module is available
+ * (run with --add-modules jdk.incubator.vector), otherwise scalar implementation.
+ * Vectorization can be turned off with -Dcnn.simd=false
+ */
+public abstract class Kernels {
+    private static final Kernels INSTANCE = load();
+
+    public static Kernels get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Check if vectorized implementation is used
+     */
+    public static boolean isVectorized() {
+        return !(INSTANCE instanceof ScalarKernels);
+    }
+
+    private static Kernels load() {
+        if(Boolean.parseBoolean(System.getProperty("cnn.simd", "true")) &&
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (Kernels) Class.forName("ru.mralexeimk.cnn.models.SimdKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {}
+        }
+        return new ScalarKernels();
+    }
+
+    /**
+     * a[i] += b[i]
+     */
+    public abstract void add(double[] a, int aOffset, double[] b, int bOffset, int len);
+
+    /**
+     * a[i] -= b[i]
+     */
+    public abstract void sub(double[] a, int aOffset, double[] b, int bOffset, int len);
+
+    /**
+     * a[i] *= b[i]
+     */
+    public abstract void mul(double[] a, int aOffset, double[] b, int bOffset, int len);
+
+    /**
+     * a[i] += val
+     */
+    public abstract void add(double[] a, int aOffset, double val, int len);
+
+    /**
+     * a[i] *= val
+     */
+    public abstract void mul(double[] a, int aOffset, double val, int len);
+
+    /**
+     * a[i] += val*b[i]
+     */
+    public abstract void axpy(double[] a, int aOffset, double val, double[] b, int bOffset, int len);
+
+    /**
+     * @return Sum of a[i]
+     */
+    public abstract double sum(double[] a, int aOffset, int len);
+
+    /**
+     * C += A*B for one cache block of Gemm (see Gemm for parameters)
+     */
+    public abstract void gemmBlock(int m, int n, int k,
+                                   double[] a, int aOffset, int lda,
+                                   double[] b, int bOffset, int ldb,
+                                   double[] c, int cOffset, int ldc);
+
+    /**
+     * C += A*b for single column b (see Gemm for parameters)
+     */
+    public abstract void gemv(int m, int k,
+                              double[] a, int aOffset, int lda,
+                              double[] b, int bOffset, int ldb,
+                              double[] c, int cOffset, int ldc);
+}
@@ -1,8 +1,13 @@
 package ru.mralexeimk.cnn.models;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import ru.mralexeimk.cnn.enums.ActivationFunType;
 import ru.mralexeimk.cnn.enums.LayerType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.layers.*;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -16,6 +21,9 @@ public abstract class Layer implements Serializable {
     protected Layer nextLayer, prevLayer;
     protected LayerType layerType;
     protected ActivationFunType activationFunType;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    protected transient Workspace workspace;
 
     public Layer(int sizeX, int sizeY, int sizeD) {
         data = new Matrix3D(sizeX, sizeY, sizeD);
@@ -33,48 +41,54 @@ public abstract class Layer implements Serializable {
     }
 
     public Matrix activationFun(Matrix m) {
-        Matrix res = m.clone();
+        return applyActivationFun(m.clone());
+    }
+
+    public Matrix3D activationFun(Matrix3D m) {
+        return applyActivationFun(m.clone());
+    }
+
+    /**
+     * Apply activation function to every value of m (in place)
+     * @return m
+     */
+    public Matrix applyActivationFun(Matrix m) {
         double sum = 0;
         if(activationFunType == ActivationFunType.SOFT_MAX) {
-            for(int x = 0; x < m.getN(); ++x) {
-                for(int y = 0; y < m.getM(); ++y) {
-                    sum += Math.exp(m.get(x, y));
+            for(int y = 0; y < m.getM(); ++y) {
+                for(int k = m.index(0, y), end = k + m.getN(); k < end; ++k) {
+                    sum += Math.exp(m.data[k]);
                 }
             }
+            if(sum == 0 && m.getN()*m.getM() != 0) throw new ArithmeticException("SOFT_MAX sum cannot be 0!");
         }
-        for(int x = 0; x < m.getN(); ++x) {
-            for(int y = 0; y < m.getM(); ++y) {
-                res.set(x, y, activationFun(m.get(x, y)));
-                if (activationFunType == ActivationFunType.SOFT_MAX) {
-                    if(sum != 0) {
-                        res.set(x, y, res.get(x, y) / sum);
-                    }
-                    else {
-                        throw new ArithmeticException("SOFT_MAX sum cannot be 0!");
-                    }
-                }
+        for(int y = 0; y < m.getM(); ++y) {
+            for(int k = m.index(0, y), end = k + m.getN(); k < end; ++k) {
+                m.data[k] = activationFun(m.data[k]);
+                if(activationFunType == ActivationFunType.SOFT_MAX) m.data[k] /= sum;
             }
         }
-        return res;
+        return m;
     }
-    public Matrix3D activationFun(Matrix3D m) {
-        Matrix3D res = m.clone();
+
+    /**
+     * Apply activation function to every value of m (in place)
+     * @return m
+     */
+    public Matrix3D applyActivationFun(Matrix3D m) {
         for(int i = 0; i < m.getD(); ++i) {
-            res.set(i, activationFun(m.get(i)));
+            applyActivationFun(m.get(i));
         }
-        return res;
+        return m;
     }
 
     public void setData(Matrix3D data) {
-        if(this.data.getShapes().equals(data.getShapes()) &&
-                this.data.get(0).getShapes().equals(data.get(0).getShapes())) {
+        if(this.data.getN() == data.getN() && this.data.getM() == data.getM() && this.data.getD() == data.getD()) {
             this.data = data;
         }
         else {
             throw new RuntimeException("Incorrect setData() in "+ layerType.toString()+"\n"+
-                    data.getShapes()+" != "+this.data.getShapes()+" (Matrix3D)\n"+
-                    "or\n"+
-                    data.get(0).getShapes()+" != "+this.data.get(0).getShapes()+" (Matrix)");
+                    data.getShapes()+" != "+this.data.getShapes()+" (Matrix3D)");
         }
     }
 
@@ -107,4 +121,97 @@ public abstract class Layer implements Serializable {
     }
 
     public void doStep() {}
+
+    /**
+     * Scratch buffers of doStepInto(), one per thread. Buffers of training (gradCols, delta, kernels)
+     * are allocated by ConvolutionGradient on first use
+     */
+    public static class Workspace {
+        public Matrix merged;
+        public double[] cols;
+        public int[] winners;
+        public double[] tile;
+        public double[] gradCols;
+        public double[] delta;
+        public double[] kernels;
+    }
+
+    /**
+     * @return Scratch buffers for doStepInto() sized for this layer
+     */
+    public Workspace createWorkspace() {
+        return new Workspace();
+    }
+
+    /**
+     * Allocate scratch buffers of doStepInPlace() (called once by NeuralNetwork.init())
+     */
+    public void allocateBuffers() {
+        workspace = createWorkspace();
+    }
+
+    /**
+     * Same as doStep(), but result is written into data of next layer without allocations
+     */
+    public void doStepInPlace() {
+        if(nextLayer != null) doStepInto(data, nextLayer.getData(), workspace);
+    }
+
+    /**
+     * Same as doStep() for passed data of this layer, result is written into next (shaped as data of next layer).
+     * Reads only weights of layer, so it may run concurrently with own data and workspace
+     */
+    public void doStepInto(Matrix3D data, Matrix3D next, Workspace workspace) {}
+
+    /**
+     * @return Whether doFusedStepInto() is supported: step of this layer and pulling of the next FilterLayer
+     * are done in one pass
+     */
+    public boolean isFusedWithPulling() {
+        return false;
+    }
+
+    /**
+     * Same as doStepInto() of this layer and then of the next FilterLayer, result is written into pulled
+     * (shaped as data of the layer after FilterLayer) and data of FilterLayer is not computed
+     */
+    public void doFusedStepInto(Matrix3D data, Matrix3D pulled, Workspace workspace) {
+        throw new RuntimeException("doFusedStepInto() is not supported in "+layerType.toString());
+    }
+
+    /**
+     * Same as doStep() for every sample of batch (data of this layer for each sample)
+     * @return Data of next layer for each sample
+     */
+    public List<Matrix3D> doStepBatch(List<Matrix3D> batch) {
+        throw new RuntimeException("doStepBatch() is not supported in "+layerType.toString());
+    }
+
+    /**
+     * @return Untrained copies of layers (same types, sizes, activation and pulling types) for new NeuralNetwork
+     */
+    public static List<Layer> copyLayers(List<Layer> layers) {
+        List<Layer> res = new ArrayList<>();
+        for(Layer layer : layers) {
+            res.add(createLayer(layer.getLayerType(), layer.getSizeX(), layer.getSizeY(), layer.getSizeD(),
+                    layer.getActivationFunType(), layer instanceof PullingLayer pl ? pl.getPullingType() : null));
+        }
+        return res;
+    }
+
+    /**
+     * @return New layer of type with sizes, activation function and pulling type (for PullingLayer)
+     */
+    public static Layer createLayer(LayerType layerType, int sizeX, int sizeY, int sizeD,
+                                    ActivationFunType activationFunType, PullingType pullingType) {
+        Layer layer = switch(layerType) {
+            case INPUT -> new InputLayer(sizeX, sizeY, sizeD);
+            case FILTER -> new FilterLayer(sizeX, sizeY, sizeD);
+            case PULLING -> new PullingLayer(sizeX, sizeY, sizeD, pullingType);
+            case NEURONS -> new NeuronsLayer(sizeY);
+            case OUTPUT -> new OutputLayer(sizeY);
+        };
+        layer.setActivationFunType(activationFunType);
+        return layer;
+    }
 }
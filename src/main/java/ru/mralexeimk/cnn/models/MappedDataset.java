@@ -0,0 +1,114 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.other.Dataset;
+import ru.mralexeimk.cnn.other.DatasetIterator;
+import ru.mralexeimk.cnn.other.Pair;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * Dataset of uint8 pixels and labels in memory-mapped buffers: pixels of sample i start
+ * at pixelsOffset + i*pixelsStride, label at labelsOffset + i*labelsStride.
+ * Pixels are normalized like csv ((t/255)*0.99+0.01) only when sample is read
+ */
+public abstract class MappedDataset implements Dataset {
+    private static final double[] NORMALIZED = new double[256];
+
+    static {
+        for(int t = 0; t < 256; ++t) {
+            NORMALIZED[t] = (t / 255.0) * 0.99 + 0.01;
+        }
+    }
+
+    protected int len, inputX, inputY, inputZ, outputUnits;
+    private ByteBuffer pixels, labels;
+    private int pixelsOffset, pixelsStride, labelsOffset, labelsStride;
+
+    protected void setPixels(ByteBuffer pixels, int offset, int stride) {
+        this.pixels = pixels;
+        pixelsOffset = offset;
+        pixelsStride = stride;
+    }
+
+    protected void setLabels(ByteBuffer labels, int offset, int stride) {
+        this.labels = labels;
+        labelsOffset = offset;
+        labelsStride = stride;
+    }
+
+    @Override
+    public int getLen() {
+        return len;
+    }
+
+    public int getInputX() {
+        return inputX;
+    }
+
+    public int getInputY() {
+        return inputY;
+    }
+
+    public int getInputZ() {
+        return inputZ;
+    }
+
+    public int getOutputUnits() {
+        return outputUnits;
+    }
+
+    public int getLabel(int index) {
+        return labels.get(labelsOffset + index*labelsStride) & 0xFF;
+    }
+
+    /**
+     * @return Read-only view of raw pixels of sample index (no copy)
+     */
+    public ByteBuffer getPixels(int index) {
+        return pixels.slice(pixelsOffset + index*pixelsStride, inputX*inputY*inputZ).asReadOnlyBuffer();
+    }
+
+    /**
+     * Write normalized pixels of sample index into input (inputX,inputY,inputZ),
+     * e.g. into data of InputLayer
+     * @return input
+     */
+    public Matrix3D fillInput(int index, Matrix3D input) {
+        double[] data = input.getBuffer();
+        if(data.length != inputX*inputY*inputZ) throw new RuntimeException("Incorrect input "+input.getShapes());
+        int pos = pixelsOffset + index*pixelsStride;
+        for(int k = 0; k < data.length; ++k) {
+            data[k] = NORMALIZED[pixels.get(pos + k) & 0xFF];
+        }
+        return input;
+    }
+
+    /**
+     * @return Sample index as (input, target) like DataExtractor.parseLine()
+     */
+    public Pair<Matrix3D, Matrix> get(int index) {
+        if(index < 0 || index >= len) throw new IndexOutOfBoundsException(index);
+        Matrix target = new Matrix(1, outputUnits, 0.01);
+        target.set(0, getLabel(index), 0.99);
+        return new Pair<>(fillInput(index, new Matrix3D(inputX, inputY, inputZ)), target);
+    }
+
+    @Override
+    public DatasetIterator iterator() {
+        return new DatasetIterator() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < len;
+            }
+
+            @Override
+            public Pair<Matrix3D, Matrix> next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
+    }
+}
@@ -1,15 +1,23 @@
 package ru.mralexeimk.cnn.models;
 
 import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.enums.PullingType;
 import ru.mralexeimk.cnn.other.Constants;
-import ru.mralexeimk.cnn.other.Pair;
 
 import java.io.Serializable;
 import java.util.*;
 
+/**
+ * Matrix (N,M) stored row-major in one contiguous buffer:
+ * value on (x,y) is data[offset + y*stride + x].
+ * Matrix over existing buffer (view, e.g. depth of Matrix3D) is changed in place only:
+ * operations that change its shape throw RuntimeException, so it never detaches from the buffer
+ */
 public class Matrix implements Serializable {
-    public double[][] data;
+    public double[] data;
     public int N, M;
+    private int offset, stride;
+    private boolean view;
 
     /**
      * Define matrix by keyboard input
@@ -18,11 +26,9 @@ public class Matrix implements Serializable {
         try (Scanner sc = new Scanner(System.in)) {
             N = sc.nextInt();
             M = sc.nextInt();
-            data = new double[M][N];
-            for (int y = 0; y < M; ++y) {
-                for (int x = 0; x < N; ++x) {
-                    data[y][x] = sc.nextDouble();
-                }
+            allocate(N, M);
+            for (int i = 0; i < N*M; ++i) {
+                data[i] = sc.nextDouble();
             }
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -36,14 +42,8 @@ public class Matrix implements Serializable {
      * @param value value
      */
     public Matrix(int N, int M, double value) {
-        this.N = N;
-        this.M = M;
-        data = new double[M][N];
-        for(int y = 0; y < M; ++y) {
-            for(int x = 0; x < N; ++x) {
-                data[y][x] = value;
-            }
-        }
+        allocate(N, M);
+        if(value != 0) Arrays.fill(data, value);
     }
 
     /**
@@ -52,7 +52,7 @@ public class Matrix implements Serializable {
      * @param M Rows
      */
     public Matrix(int N, int M) {
-        this(N, M, 0);
+        allocate(N, M);
     }
 
     /**
@@ -63,13 +63,10 @@ public class Matrix implements Serializable {
      * @param to Random end
      */
     public Matrix(int N, int M, double from, double to) {
-        this.N = N;
-        this.M = M;
-        data = new double[M][N];
-        for(int y = 0; y < M; ++y) {
-            for(int x = 0; x < N; ++x) {
-                data[y][x] = from + new Random().nextDouble() * (to - from);
-            }
+        allocate(N, M);
+        Random random = new Random();
+        for(int i = 0; i < data.length; ++i) {
+            data[i] = from + random.nextDouble() * (to - from);
         }
     }
 
@@ -81,15 +78,33 @@ public class Matrix implements Serializable {
         assign(m);
     }
 
+    /**
+     * Define matrix (N,M) over existing buffer without copying
+     * @param data Buffer
+     * @param offset Index of (0,0) in buffer
+     * @param stride Distance between rows in buffer
+     * @param N Columns
+     * @param M Rows
+     */
+    public Matrix(double[] data, int offset, int stride, int N, int M) {
+        if(N > stride || offset < 0 || (M > 0 && offset + (M-1)*stride + N > data.length)) {
+            throw new IndexOutOfBoundsException("Buffer is too small for matrix ("+N+";"+M+")");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.N = N;
+        this.M = M;
+        view = true;
+    }
+
     /**
      * Define vector (with matrix implementation) by List of values
      */
     public Matrix(List<Double> vector) {
-        N = 1;
-        M = vector.size();
-        data = new double[M][N];
+        allocate(1, vector.size());
         for(int y = 0; y < M; ++y) {
-            data[y][0] = vector.get(y);
+            data[y] = vector.get(y);
         }
     }
 
@@ -101,13 +116,11 @@ public class Matrix implements Serializable {
      */
     public Matrix(String pattern, String separatorRows, String separatorColumns) {
         String[] arr = pattern.split(separatorRows);
-        M = arr.length;
-        N = arr[0].split(separatorColumns).length;
-        data = new double[M][N];
+        allocate(arr[0].split(separatorColumns).length, arr.length);
         for(int y = 0; y < arr.length; ++y) {
             String[] nums = arr[y].split(separatorColumns);
             for(int x = 0; x < nums.length; ++x) {
-                data[y][x] = Double.parseDouble(nums[x]);
+                data[y*N + x] = Double.parseDouble(nums[x]);
             }
         }
     }
@@ -120,28 +133,50 @@ public class Matrix implements Serializable {
         this(pattern, "\\|", ",");
     }
 
+    /**
+     * Replace storage with new zero buffer (N,M)
+     */
+    private void allocate(int N, int M) {
+        if(view) {
+            throw new RuntimeException("Can't reshape view ("+this.N+";"+this.M+") into ("+N+";"+M+")");
+        }
+        this.N = N;
+        this.M = M;
+        data = new double[N*M];
+        offset = 0;
+        stride = N;
+    }
+
     /**
      * @return List of matrix values
      */
     public List<Double> toList() {
-        List<Double> res = new ArrayList<>();
-        for(int y = 0; y < getM(); ++y) {
-            for(int x = 0; x < getN(); ++x) {
-                res.add(get(x, y));
+        List<Double> res = new ArrayList<>(N*M);
+        for(int y = 0; y < M; ++y) {
+            int row = index(0, y);
+            for(int x = 0; x < N; ++x) {
+                res.add(data[row + x]);
             }
         }
         return res;
     }
 
+    /**
+     * Copy values of m into this matrix: in place if shapes are the same
+     * (so views over its buffer see them), else into new buffer (see Matrix description)
+     */
     public void assign(Matrix m) {
-        this.N = m.getN();
-        this.M = m.getM();
-        data = new double[M][N];
-        for(int x = 0; x < m.getN(); ++x) {
-            for(int y = 0; y < m.getM(); ++y) {
-                data[y][x] = m.get(x, y);
-            }
-        }
+        double[] src = m.data;
+        int srcOffset = m.offset, srcStride = m.stride;
+        if(data == null || N != m.getN() || M != m.getM()) allocate(m.getN(), m.getM());
+        copyRows(src, srcOffset, srcStride, data, offset, stride, N, M);
+    }
+
+    /**
+     * @return Whether matrix is over buffer of another object (see Matrix description)
+     */
+    public boolean isView() {
+        return view;
     }
 
     public Matrix clone() {
@@ -162,15 +197,50 @@ public class Matrix implements Serializable {
         return M;
     }
 
+    /**
+     * @return Underlying buffer (shared, not copied)
+     */
+    public double[] getBuffer() {
+        return data;
+    }
+
+    /**
+     * @return Index of (0,0) in buffer
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Distance between rows in buffer
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Check if rows follow each other in buffer without gaps
+     */
+    public boolean isContiguous() {
+        return stride == N || M <= 1;
+    }
+
+    /**
+     * @return Index of (x,y) in buffer
+     */
+    public int index(int x, int y) {
+        return offset + y*stride + x;
+    }
+
     /**
      * @return Matrix value on (x,y)
      */
     public double get(int x, int y) {
-        return data[y][x];
+        return data[offset + y*stride + x];
     }
 
     public void set(int x, int y, double value) {
-        data[y][x] = value;
+        data[offset + y*stride + x] = value;
     }
 
     /**
@@ -188,23 +258,25 @@ public class Matrix implements Serializable {
     }
 
     public List<Double> getListLine(int y) {
-        List<Double> res = new ArrayList<>();
-        for(int x = 0; x < N; ++x) res.add(get(x, y));
+        List<Double> res = new ArrayList<>(N);
+        int row = index(0, y);
+        for(int x = 0; x < N; ++x) res.add(data[row + x]);
         return res;
     }
 
     public void setLine(int y, List<Double> list) {
-        for(int x = 0; x < N; ++x) data[y][x] = list.get(x);
+        int row = index(0, y);
+        for(int x = 0; x < N; ++x) data[row + x] = list.get(x);
     }
 
     public List<Double> getListColumn(int x) {
-        List<Double> res = new ArrayList<>();
+        List<Double> res = new ArrayList<>(M);
         for(int y = 0; y < M; ++y) res.add(get(x, y));
         return res;
     }
 
     public void setColumn(int x, List<Double> list) {
-        for(int y = 0; y < M; ++y) data[y][x] = list.get(y);
+        for(int y = 0; y < M; ++y) set(x, y, list.get(y));
     }
 
     /**
@@ -212,13 +284,7 @@ public class Matrix implements Serializable {
      * @return -A
      */
     public Matrix getNegative() {
-        Matrix res = new Matrix(this);
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                res.set(x, y, -get(x, y));
-            }
-        }
-        return res;
+        return MatrixExtractor.getMultiply(this, -1);
     }
 
     /**
@@ -226,35 +292,25 @@ public class Matrix implements Serializable {
      */
     public void replace(int xStart, int yStart, Matrix m) {
         if(xStart+m.getN() > N || yStart+m.getM() > M) throw new RuntimeException("Matrix 'm' is too large");
-        for(int x = xStart; x < xStart+m.getN(); ++x) {
-            for(int y = yStart; y < yStart+m.getM(); ++y) {
-                set(x, y, m.get(x-xStart, y-yStart));
-            }
-        }
+        copyRows(m.data, m.offset, m.stride, data, index(xStart, yStart), stride, m.getN(), m.getM());
     }
 
     public double[][] getData() {
-        return Arrays.stream(data).map(double[]::clone).toArray(double[][]::new);
+        double[][] res = new double[M][N];
+        for(int y = 0; y < M; ++y) {
+            System.arraycopy(data, index(0, y), res[y], 0, N);
+        }
+        return res;
     }
 
     /**
      * Expand matrix on right side and bottom side with zero values
      */
     public void expand(int addN, int addM) {
-        N += addN;
-        M += addM;
-        double[][] temp = getData();
-        data = new double[M][N];
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                if(x < N-addN && y < M-addM) {
-                    set(x, y, temp[y][x]);
-                }
-                else {
-                    set(x, y, 0);
-                }
-            }
-        }
+        double[] src = data;
+        int srcOffset = offset, srcStride = stride, oldN = N, oldM = M;
+        allocate(N + addN, M + addM);
+        copyRows(src, srcOffset, srcStride, data, 0, N, oldN, oldM);
     }
 
     /**
@@ -262,9 +318,10 @@ public class Matrix implements Serializable {
      */
     public void increase(int kX, int kY) {
         Matrix res = new Matrix(N*kX, M*kY);
-        for(int x = 0; x < res.getN(); ++x) {
-            for(int y = 0; y < res.getM(); ++y) {
-                res.set(x, y, get(x/kX, y/kY));
+        for(int y = 0; y < res.getM(); ++y) {
+            int row = index(0, y/kY), resRow = y*res.getN();
+            for(int x = 0; x < res.getN(); ++x) {
+                res.data[resRow + x] = data[row + x/kX];
             }
         }
         assign(res);
@@ -274,46 +331,25 @@ public class Matrix implements Serializable {
      * Erase last 'removeN' columns and last 'removeM' rows
      */
     public void erase(int removeN, int removeM) {
-        N -= removeN;
-        M -= removeM;
-        double[][] temp = getData();
-        data = new double[M][N];
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                set(x, y, temp[y][x]);
-            }
-        }
+        double[] src = data;
+        int srcOffset = offset, srcStride = stride;
+        allocate(N - removeN, M - removeM);
+        copyRows(src, srcOffset, srcStride, data, 0, N, N, M);
     }
 
     public void removeRows(int start, int end) {
         int lenRemove = (end-start+1);
         Matrix res = new Matrix(N, M-lenRemove);
-        for(int y = 0; y < start; ++y) {
-            for(int x = 0; x < N; ++x) {
-                res.set(x, y, get(x, y));
-            }
-        }
-        for(int y = end+1; y < M; ++y) {
-            for(int x = 0; x < N; ++x) {
-                res.set(x, y-lenRemove, get(x, y));
-            }
-        }
+        copyRows(data, offset, stride, res.data, 0, N, N, start);
+        copyRows(data, index(0, end+1), stride, res.data, start*N, N, N, M-end-1);
         assign(res);
     }
 
     public void removeColumns(int start, int end) {
         int lenRemove = (end-start+1);
         Matrix res = new Matrix(N-lenRemove, M);
-        for(int y = 0; y < M; ++y) {
-            for(int x = 0; x < start; ++x) {
-                res.set(x, y, get(x, y));
-            }
-        }
-        for(int y = 0; y < M; ++y) {
-            for(int x = end+1; x < N; ++x) {
-                res.set(x-lenRemove, y, get(x, y));
-            }
-        }
+        copyRows(data, offset, stride, res.data, 0, res.N, start, M);
+        copyRows(data, index(end+1, 0), stride, res.data, start, res.N, N-end-1, M);
         assign(res);
     }
 
@@ -339,20 +375,24 @@ public class Matrix implements Serializable {
      */
     public Matrix getSubMatrix(int xStart, int yStart, int width, int height) {
         Matrix res = new Matrix(width, height);
-        for(int x = xStart; x < xStart+width; ++x) {
-            for(int y = yStart; y < yStart+height; ++y) {
-                res.set(x-xStart, y-yStart, get(x, y));
-            }
-        }
+        copyRows(data, index(xStart, yStart), stride, res.data, 0, width, width, height);
         return res;
     }
 
+    /**
+     * @return SubMatrix of matrix which shares buffer with this matrix
+     */
+    public Matrix getSubMatrixView(int xStart, int yStart, int width, int height) {
+        if(xStart+width > N || yStart+height > M) throw new RuntimeException("SubMatrix is too large");
+        return new Matrix(data, index(xStart, yStart), stride, width, height);
+    }
+
     public double getSum() {
+        Kernels kernels = Kernels.get();
+        if(isContiguous()) return kernels.sum(data, offset, N*M);
         double res = 0;
-        for(int i = 0; i < N; ++i) {
-            for(int j = 0; j < M; ++j) {
-                res += get(i, j);
-            }
+        for(int y = 0; y < M; ++y) {
+            res += kernels.sum(data, index(0, y), N);
         }
         return res;
     }
@@ -368,15 +408,20 @@ public class Matrix implements Serializable {
     }
 
     public void swapLines(int l1, int l2) {
-        List<Double> temp = new ArrayList<>(getListLine(l1));
-        setLine(l1, getListLine(l2));
-        setLine(l2, temp);
+        int r1 = index(0, l1), r2 = index(0, l2);
+        for(int x = 0; x < N; ++x) {
+            double temp = data[r1 + x];
+            data[r1 + x] = data[r2 + x];
+            data[r2 + x] = temp;
+        }
     }
 
     public void swapColumns(int c1, int c2) {
-        List<Double> temp = new ArrayList<>(getListColumn(c1));
-        setColumn(c1, getListColumn(c2));
-        setColumn(c2, temp);
+        for(int y = 0; y < M; ++y) {
+            double temp = get(c1, y);
+            set(c1, y, get(c2, y));
+            set(c2, y, temp);
+        }
     }
 
     @Override
@@ -390,23 +435,16 @@ public class Matrix implements Serializable {
         Matrix A = (Matrix)obj;
 
         if(N != A.N || M != A.M) return false;
-        for(int i = 0; i < N; ++i) {
-            for(int j = 0; j < M; ++j) {
-                if(Math.abs(get(i, j) - A.get(i, j)) > Constants.EPS) return false;
+        for(int y = 0; y < M; ++y) {
+            for(int x = 0; x < N; ++x) {
+                if(Math.abs(get(x, y) - A.get(x, y)) > Constants.EPS) return false;
             }
         }
         return true;
     }
 
     public double getAverage() {
-        double res = 0;
-        for(int y = 0; y < getM(); ++y) {
-            for(int x = 0; x < getN(); ++x) {
-                res += get(x, y);
-            }
-        }
-        res /= getN()*getM();
-        return res;
+        return getSum() / (N*M);
     }
 
     /**
@@ -430,8 +468,9 @@ public class Matrix implements Serializable {
                 }
                 double val = -(l2 / l1);
                 set(L1, L2, 0);
+                int r1 = index(0, L1), r2 = index(0, L2);
                 for (int x = L1 + 1; x < N; ++x) {
-                    set(x, L2, get(x, L2) + get(x, L1) * val);
+                    data[r2 + x] += data[r1 + x] * val;
                 }
             }
         }
@@ -459,8 +498,9 @@ public class Matrix implements Serializable {
                 }
                 double val = -(l2 / l1);
                 set(L1, L2, 0);
+                int r1 = index(0, L1), r2 = index(0, L2);
                 for (int x = L1 + 1; x < N; ++x) {
-                    set(x, L2, get(x, L2) + get(x, L1) * val);
+                    data[r2 + x] += data[r1 + x] * val;
                 }
             }
         }
@@ -495,8 +535,9 @@ public class Matrix implements Serializable {
         for(int i = 0; i < size; ++i) {
             double el = get(i, i);
             if(el != 0 && el != 1) {
+                int row = index(0, i);
                 for(int x = 0; x < N; ++x) {
-                    set(x, i, get(x, i)/el);
+                    data[row + x] /= el;
                 }
             }
         }
@@ -520,24 +561,29 @@ public class Matrix implements Serializable {
      * Matrix transpose
      */
     public Matrix transpose() {
-        Matrix res = new Matrix(M, N);
-        for (int x = 0; x < N; ++x) {
-            for (int y = 0; y < M; ++y) {
-                res.set(y, x, get(x, y));
-            }
+        assign(getTransposed());
+        return this;
+    }
+
+    /**
+     * Rank-1 update: matrix += val * x*y^T for vectors x (M values) and y (N values)
+     * @return this
+     */
+    public Matrix addOuter(double val, Matrix x, Matrix y) {
+        if(x.getN()*x.getM() != M || y.getN()*y.getM() != N) {
+            throw new RuntimeException("Can't add outer product of "+x.getShapes()+" and "+y.getShapes()+" to "+getShapes());
+        }
+        if(!x.isContiguous()) x = x.clone();
+        if(!y.isContiguous()) y = y.clone();
+        Kernels kernels = Kernels.get();
+        for(int i = 0; i < M; ++i) {
+            kernels.axpy(data, index(0, i), val * x.data[x.offset + i], y.data, y.offset, N);
         }
-        assign(res);
         return this;
     }
 
     public Matrix getTransposed() {
-        Matrix res = new Matrix(M, N);
-        for (int x = 0; x < N; ++x) {
-            for (int y = 0; y < M; ++y) {
-                res.set(y, x, get(x, y));
-            }
-        }
-        return res;
+        return MatrixExtractor.getTransposed(this);
     }
 
     /**
@@ -562,66 +608,69 @@ public class Matrix implements Serializable {
 
     public Matrix convertByKernel(Matrix K, int paddingSizeX, int paddingSizeY,
                                   PaddingFill paddingFill, int stridingSizeX, int stridingSizeY) {
-        return MatrixExtractor.getConvertByKernel(this, K, paddingSizeX, paddingSizeY,
-                paddingFill, stridingSizeX, stridingSizeY);
+        assign(MatrixExtractor.getConvertByKernel(this, K, paddingSizeX, paddingSizeY,
+                paddingFill, stridingSizeX, stridingSizeY));
+        return this;
     }
 
     public Matrix convertByMaxPulling(int size) {
-        if(size <= getN() && size <= getM()) {
-            Matrix res = new Matrix(getN()/size, getM()/size);
-            for(int y = 0; y < res.getM(); ++y) {
-                for(int x = 0; x < res.getN(); ++x) {
-                    double val = 0;
-                    for(int x1 = size*x; x1 < size*(x+1); x1++) {
-                        for(int y1 = size*y; y1 < size*(y+1); y1++) {
-                            val = Math.max(val, get(x1, y1));
-                        }
-                    }
-                    res.set(x, y, val);
-                }
-            }
-            assign(res);
-        }
-        return this;
+        return convertByPulling(PullingType.MAX, size);
     }
 
     public Matrix convertByMinPulling(int size) {
+        return convertByPulling(PullingType.MIN, size);
+    }
+
+    public Matrix convertByAveragePulling(int size) {
+        return convertByPulling(PullingType.AVERAGE, size);
+    }
+
+    private Matrix convertByPulling(PullingType pullingType, int size) {
         if(size <= getN() && size <= getM()) {
-            Matrix res = new Matrix(getN()/size, getM()/size);
-            for(int y = 0; y < res.getM(); ++y) {
-                for(int x = 0; x < res.getN(); ++x) {
-                    double val = Double.MAX_VALUE;
-                    for(int x1 = size*x; x1 < size*(x+1); x1++) {
-                        for(int y1 = size*y; y1 < size*(y+1); y1++) {
-                            val = Math.min(val, get(x1, y1));
-                        }
-                    }
-                    res.set(x, y, val);
-                }
-            }
-            assign(res);
+            assign(getConvertByPulling(pullingType, size, new Matrix(getN()/size, getM()/size)));
         }
         return this;
     }
 
-    public Matrix convertByAveragePulling(int size) {
-        if(size <= getN() && size <= getM()) {
-            Matrix res = new Matrix(getN()/size, getM()/size);
-            for(int y = 0; y < res.getM(); ++y) {
-                for(int x = 0; x < res.getN(); ++x) {
-                    double val = 0;
+    /**
+     * Pulling by (size,size) windows written into res (N/size,M/size)
+     * @return res
+     */
+    public Matrix getConvertByPulling(PullingType pullingType, int size, Matrix res) {
+        return getConvertByPulling(pullingType, size, res, null, 0);
+    }
+
+    /**
+     * Pulling by (size,size) windows written into res (N/size,M/size). For MAX and MIN position in buffer
+     * of the winner of every window is written into winners (from winnersOffset, row by row of res),
+     * -1 if no value of window is greater than 0 for MAX
+     * @return res
+     */
+    public Matrix getConvertByPulling(PullingType pullingType, int size, Matrix res, int[] winners, int winnersOffset) {
+        if(res.getN() != getN()/size || res.getM() != getM()/size) {
+            throw new RuntimeException("Incorrect pulling result shapes");
+        }
+        for(int y = 0; y < res.getM(); ++y) {
+            for(int x = 0; x < res.getN(); ++x) {
+                double val = pullingType == PullingType.MIN ? Double.MAX_VALUE : 0;
+                int winner = -1;
+                for(int y1 = size*y; y1 < size*(y+1); y1++) {
+                    int row = index(0, y1);
                     for(int x1 = size*x; x1 < size*(x+1); x1++) {
-                        for(int y1 = size*y; y1 < size*(y+1); y1++) {
-                            val += get(x1, y1);
+                        double v = data[row + x1];
+                        if(pullingType == PullingType.AVERAGE) val += v;
+                        else if(pullingType == PullingType.MAX ? v > val : v < val) {
+                            val = v;
+                            winner = row + x1;
                         }
                     }
-                    val /= size*size;
-                    res.set(x, y, val);
                 }
+                if(pullingType == PullingType.AVERAGE) val /= size*size;
+                else if(winners != null) winners[winnersOffset + y*res.getN() + x] = winner;
+                res.data[res.index(x, y)] = val;
             }
-            assign(res);
         }
-        return this;
+        return res;
     }
 
     /**
@@ -674,20 +723,16 @@ public class Matrix implements Serializable {
     }
 
     public Matrix sum(double val) {
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                set(x, y, get(x, y) + val);
-            }
-        }
+        Kernels kernels = Kernels.get();
+        if(isContiguous()) kernels.add(data, offset, val, N*M);
+        else for(int y = 0; y < M; ++y) kernels.add(data, index(0, y), val, N);
         return this;
     }
 
     public Matrix sum(Matrix m) {
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                set(x, y, get(x, y) + m.get(x, y));
-            }
-        }
+        Kernels kernels = Kernels.get();
+        if(isContiguous() && m.isContiguous()) kernels.add(data, offset, m.data, m.offset, N*M);
+        else for(int y = 0; y < M; ++y) kernels.add(data, index(0, y), m.data, m.index(0, y), N);
         return this;
     }
 
@@ -696,44 +741,28 @@ public class Matrix implements Serializable {
     }
 
     public Matrix diff(Matrix m) {
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                set(x, y, get(x, y) - m.get(x, y));
-            }
-        }
+        Kernels kernels = Kernels.get();
+        if(isContiguous() && m.isContiguous()) kernels.sub(data, offset, m.data, m.offset, N*M);
+        else for(int y = 0; y < M; ++y) kernels.sub(data, index(0, y), m.data, m.index(0, y), N);
         return this;
     }
 
     public Matrix multiply(double val) {
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                set(x, y, get(x, y) * val);
-            }
-        }
+        Kernels kernels = Kernels.get();
+        if(isContiguous()) kernels.mul(data, offset, val, N*M);
+        else for(int y = 0; y < M; ++y) kernels.mul(data, index(0, y), val, N);
         return this;
     }
 
     public Matrix multiply(Matrix m) {
         if(N == m.getM()) {
-            Matrix res = new Matrix(m.getN(), M);
-            for (int y = 0; y < M; ++y) {
-                for (int x = 0; x < m.getN(); ++x) {
-                    for(int i = 0; i < N; ++i) {
-                        res.set(x, y, res.get(x, y) + get(i, y)*m.get(x, i));
-                    }
-                }
-            }
-            assign(res);
+            assign(MatrixExtractor.getMultiply(this, m));
             return this;
         }
         else if(N == m.getN() && M == m.getM()) {
-            Matrix res = new Matrix(N, M);
-            for(int y = 0; y < M; ++y) {
-                for(int x = 0; x < N; ++x) {
-                    res.set(x, y, get(x, y) * m.get(x, y));
-                }
-            }
-            assign(res);
+            Kernels kernels = Kernels.get();
+            if(isContiguous() && m.isContiguous()) kernels.mul(data, offset, m.data, m.offset, N*M);
+            else for(int y = 0; y < M; ++y) kernels.mul(data, index(0, y), m.data, m.index(0, y), N);
             return this;
         }
         throw new RuntimeException("Can't multiply matrices");
@@ -768,4 +797,19 @@ public class Matrix implements Serializable {
         }
         return index;
     }
+
+    /**
+     * Copy block (width,height) between row-major buffers
+     */
+    static void copyRows(double[] src, int srcOffset, int srcStride,
+                         double[] dst, int dstOffset, int dstStride, int width, int height) {
+        if(width <= 0) return;
+        if(srcStride == width && dstStride == width) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, width*height);
+            return;
+        }
+        for(int y = 0; y < height; ++y) {
+            System.arraycopy(src, srcOffset + y*srcStride, dst, dstOffset + y*dstStride, width);
+        }
+    }
 }
@@ -8,7 +8,12 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Matrix3D (N,M,D) stored in one contiguous buffer, depth by depth:
+ * value on (x,y,d) is data[(d*M + y)*N + x], every depth is Matrix over the same buffer
+ */
 public class Matrix3D implements Serializable {
+    private double[] data;
     private List<Matrix> matrices;
     private int N, M, D;
 
@@ -19,13 +24,7 @@ public class Matrix3D implements Serializable {
      * @param D Count of matrices (depth)
      */
     public Matrix3D(int N, int M, int D) {
-        this.N = N;
-        this.M = M;
-        this.D = D;
-        matrices = new ArrayList<>();
-        for(int i = 0; i < D; ++i) {
-            matrices.add(new Matrix(N, M));
-        }
+        allocate(N, M, D);
     }
 
     /**
@@ -37,14 +36,8 @@ public class Matrix3D implements Serializable {
      */
     public Matrix3D(int N, int M, int D, List<Double> vector) {
         this(N, M, D);
-        int k = 0;
-        for(int z = 0; z < D; ++z) {
-            for(int y = 0; y < M; ++y) {
-                for(int x = 0; x < N; ++x) {
-                    set(x, y, z, vector.get(k));
-                    ++k;
-                }
-            }
+        for(int k = 0; k < data.length; ++k) {
+            data[k] = vector.get(k);
         }
     }
 
@@ -54,24 +47,11 @@ public class Matrix3D implements Serializable {
      * @param direction Direction of vector
      */
     public Matrix3D(List<Double> vector, Direction direction) {
-        N = 1;
-        M = 1;
-        D = 1;
-        if(direction == Direction.X) N = vector.size();
-        else if(direction == Direction.Y) M = vector.size();
-        else D = vector.size();
-        matrices = new ArrayList<>();
-        for(int i = 0; i < D; ++i) {
-            matrices.add(new Matrix(N, M));
-        }
-        int k = 0;
-        for(int x = 0; x < N; ++x) {
-            for(int y = 0; y < M; ++y) {
-                for(int d = 0; d < D; ++d) {
-                    set(x, y, d, vector.get(k));
-                    ++k;
-                }
-            }
+        if(direction == Direction.X) allocate(vector.size(), 1, 1);
+        else if(direction == Direction.Y) allocate(1, vector.size(), 1);
+        else allocate(1, 1, vector.size());
+        for(int k = 0; k < data.length; ++k) {
+            data[k] = vector.get(k);
         }
     }
 
@@ -79,31 +59,17 @@ public class Matrix3D implements Serializable {
      * Define Matrix3D by passed matrices
      */
     public Matrix3D(Matrix... ms) {
-        N = ms[0].getN();
-        M = ms[0].getM();
-        D = ms.length;
-        matrices = new ArrayList<>();
-        for(int i = 0; i < D; ++i) {
-            if(N == ms[i].getN() && M == ms[i].getM()) {
-                matrices.add(ms[i].clone());
-            }
-            else {
-                throw new IndexOutOfBoundsException("Matrices are different!");
-            }
-        }
+        this(List.of(ms));
     }
 
     /**
      * Define Matrix3D by passed matrices
      */
     public Matrix3D(List<Matrix> ms) {
-        N = ms.get(0).getN();
-        M = ms.get(0).getM();
-        D = ms.size();
-        matrices = new ArrayList<>();
+        allocate(ms.get(0).getN(), ms.get(0).getM(), ms.size());
         for(int i = 0; i < D; ++i) {
             if(N == ms.get(i).getN() && M == ms.get(i).getM()) {
-                matrices.add(ms.get(i).clone());
+                get(i).replace(0, 0, ms.get(i));
             }
             else {
                 throw new IndexOutOfBoundsException("Matrices are different!");
@@ -119,22 +85,42 @@ public class Matrix3D implements Serializable {
     }
 
     public void assign(Matrix3D m) {
-        N = m.getN();
-        M = m.getM();
-        D = m.getD();
-        matrices = new ArrayList<>();
+        List<Matrix> src = m.matrices;
+        allocate(m.getN(), m.getM(), m.getD());
+        for(int i = 0; i < D; ++i) {
+            get(i).replace(0, 0, src.get(i));
+        }
+    }
+
+    /**
+     * Replace storage with new zero buffer (N,M,D) and matrices over it
+     */
+    private void allocate(int N, int M, int D) {
+        this.N = N;
+        this.M = M;
+        this.D = D;
+        data = new double[N*M*D];
+        matrices = new ArrayList<>(D);
         for(int i = 0; i < D; ++i) {
-            matrices.add(m.get(i).clone());
+            matrices.add(new Matrix(data, i*N*M, N, N, M));
         }
     }
 
     /**
-     * redefine N,M,D by internal data
+     * redefine N,M,D by internal data and pack matrices back into one buffer
      */
     public void redefine() {
-        N = get(0).getN();
-        M = get(0).getM();
-        D = matrices.size();
+        pack(matrices);
+    }
+
+    /**
+     * Replace storage with matrices (same shapes) packed into one buffer
+     */
+    private void pack(List<Matrix> src) {
+        allocate(src.get(0).getN(), src.get(0).getM(), src.size());
+        for(int i = 0; i < D; ++i) {
+            get(i).replace(0, 0, src.get(i));
+        }
     }
 
     public List<Double> toList() {
@@ -169,17 +155,9 @@ public class Matrix3D implements Serializable {
      */
     public Matrix3D expandLine(int N, int M, int D) {
         if(isVector() && this.M == N*M*D) {
-            Matrix3D res = new Matrix3D(N, M, D);
-            int k = 0;
-            for (int z = 0; z < D; ++z) {
-                for (int y = 0; y < M; ++y) {
-                    for (int x = 0; x < N; ++x) {
-                        res.set(x, y, z, get(0, k, 0));
-                        ++k;
-                    }
-                }
-            }
-            assign(res);
+            double[] src = data;
+            allocate(N, M, D);
+            System.arraycopy(src, 0, data, 0, data.length);
         }
         return this;
     }
@@ -188,10 +166,13 @@ public class Matrix3D implements Serializable {
      * Increase matrix by (kX,kY) times for each depth
      */
     public void increase(int kX, int kY) {
+        List<Matrix> res = new ArrayList<>(D);
         for(int z = 0; z < D; ++z) {
-            get(z).increase(kX, kY);
+            Matrix m = get(z).clone();
+            m.increase(kX, kY);
+            res.add(m);
         }
-        redefine();
+        pack(res);
     }
 
     public Matrix3D clone() {
@@ -219,6 +200,13 @@ public class Matrix3D implements Serializable {
         return D;
     }
 
+    /**
+     * @return Buffer of all depths (shared, not copied)
+     */
+    public double[] getBuffer() {
+        return data;
+    }
+
     public Matrix get(int d) {
         return matrices.get(d);
     }
@@ -229,7 +217,7 @@ public class Matrix3D implements Serializable {
 
     public void set(int index, Matrix m) {
         if(N == m.getN() && M == m.getM()) {
-            matrices.set(index, m);
+            get(index).replace(0, 0, m);
         }
     }
 
@@ -238,8 +226,8 @@ public class Matrix3D implements Serializable {
     }
 
     public void add(Matrix m) {
-        ++D;
         matrices.add(m);
+        redefine();
     }
 
     public void replace(int xStart, int yStart, Matrix3D m) {
@@ -250,63 +238,78 @@ public class Matrix3D implements Serializable {
 
     public Matrix3D getConvertToLine() {
         Matrix3D res = new Matrix3D(1, N*M*D, 1);
-        for(int i = 0; i < D; ++i) {
-            List<Double> list = get(i).toList();
-            for(int j = 0; j < list.size(); ++j) {
-                res.get(0).set(0, i*list.size()+j, list.get(j));
-            }
-        }
+        System.arraycopy(data, 0, res.data, 0, data.length);
         return res;
     }
 
     public Matrix3D getConvertTo3DLine() {
         Matrix3D res = new Matrix3D(1, 1, N*M*D);
-        for(int i = 0; i < D; ++i) {
-            List<Double> list = get(i).toList();
-            for(int j = 0; j < list.size(); ++j) {
-                res.get(i*list.size()+j).set(0, 0, list.get(j));
-            }
-        }
+        System.arraycopy(data, 0, res.data, 0, data.length);
         return res;
     }
 
     public Matrix3D convertByMaxPulling(int size) {
-        N /= size;
-        M /= size;
-        for(int i = 0; i < D; ++i) {
-            get(i).convertByMaxPulling(size);
-        }
+        assign(getConvertByMaxPulling(size));
         return this;
     }
 
     public Matrix3D convertByAveragePulling(int size) {
-        N /= size;
-        M /= size;
-        for(int i = 0; i < D; ++i) {
-            get(i).convertByAveragePulling(size);
-        }
+        assign(getConvertByAveragePulling(size));
         return this;
     }
 
     public Matrix3D convertByMinPulling(int size) {
-        N /= size;
-        M /= size;
-        for(int i = 0; i < D; ++i) {
-            get(i).convertByMinPulling(size);
-        }
+        assign(getConvertByMinPulling(size));
         return this;
     }
 
     public Matrix3D getConvertByAveragePulling(int size) {
-        return new Matrix3D(this).convertByAveragePulling(size);
+        return getConvertByPulling(PullingType.AVERAGE, size, new Matrix3D(N/size, M/size, D));
     }
 
     public Matrix3D getConvertByMaxPulling(int size) {
-        return new Matrix3D(this).convertByMaxPulling(size);
+        return getConvertByPulling(PullingType.MAX, size, new Matrix3D(N/size, M/size, D));
     }
 
     public Matrix3D getConvertByMinPulling(int size) {
-        return new Matrix3D(this).convertByMinPulling(size);
+        return getConvertByPulling(PullingType.MIN, size, new Matrix3D(N/size, M/size, D));
+    }
+
+    /**
+     * Pulling of every depth written into res (N/size,M/size,D)
+     * @return res
+     */
+    public Matrix3D getConvertByPulling(PullingType pullingType, int size, Matrix3D res) {
+        return getConvertByPulling(pullingType, size, res, null);
+    }
+
+    /**
+     * Pulling of every depth written into res (N/size,M/size,D). For MAX and MIN position in buffer
+     * of the winner of every window is written into winners (same size as buffer of res), see scatter()
+     * @return res
+     */
+    public Matrix3D getConvertByPulling(PullingType pullingType, int size, Matrix3D res, int[] winners) {
+        if(res.getD() != D) throw new RuntimeException("Incorrect pulling result shapes");
+        if(winners != null && winners.length != res.data.length) {
+            throw new RuntimeException("Incorrect winners size "+winners.length);
+        }
+        for(int i = 0; i < D; ++i) {
+            get(i).getConvertByPulling(pullingType, size, res.get(i), winners, i*res.N*res.M);
+        }
+        return res;
+    }
+
+    /**
+     * Route errors of MAX/MIN pulling result back to its input: every value is added to res
+     * on position of its winner (see getConvertByPulling()), other values of res are not changed
+     * @return res
+     */
+    public Matrix3D scatter(int[] winners, Matrix3D res) {
+        if(winners.length != data.length) throw new RuntimeException("Incorrect winners size "+winners.length);
+        for(int k = 0; k < data.length; ++k) {
+            if(winners[k] >= 0) res.data[winners[k]] += data[k];
+        }
+        return res;
     }
 
     public Matrix3D getConvertByMergeKernel(Matrix3D K) {
@@ -314,18 +317,7 @@ public class Matrix3D implements Serializable {
     }
 
     public Matrix3D getConvertByMergeKernel(Matrix3D K, int paddingSize, PaddingFill paddingFill, int stridingSize) {
-        int sizeX = (N - K.getN() + 2*paddingSize)/stridingSize + 1;
-        int sizeY = (M - K.getM() + 2*paddingSize)/stridingSize + 1;
-        Matrix3D res = new Matrix3D(sizeX, sizeY, K.getD());
-        for(int i = 0; i < K.getD(); i+=stridingSize) {
-            Matrix m = new Matrix(sizeX, sizeY);
-            for (int j = 0; j < D; j+=stridingSize) {
-                Matrix clone = get(j).clone();
-                m.sum(clone.convertByKernel(K.get(i), paddingSize, paddingSize, paddingFill, stridingSize, stridingSize));
-            }
-            res.set(i, m);
-        }
-        return res;
+        return Convolution.convertByMergeKernel(this, K, paddingSize, paddingFill, stridingSize);
     }
 
     public Matrix3D convertByMergeKernel(Matrix3D K) {
@@ -342,16 +334,7 @@ public class Matrix3D implements Serializable {
     }
 
     public Matrix3D getConvertByKernel(Matrix3D K, int paddingSize, PaddingFill paddingFill, int stridingSize) {
-        int sizeX = (N - K.getN() + 2*paddingSize)/stridingSize + 1;
-        int sizeY = (M - K.getM() + 2*paddingSize)/stridingSize + 1;
-        Matrix3D res = new Matrix3D(sizeX, sizeY, K.getD());
-        int len = K.getD()/D;
-        for(int i = 0; i < K.getD(); ++i) {
-            Matrix clone = get(i/len).clone();
-            clone.convertByKernel(K.get(i), paddingSize, paddingSize, paddingFill, stridingSize, stridingSize);
-            res.set(i, clone);
-        }
-        return res;
+        return Convolution.convertByKernel(this, K, paddingSize, paddingFill, stridingSize);
     }
 
     public Matrix3D convertByKernel(Matrix3D K, int paddingSize, PaddingFill paddingFill, int stridingSize) {
@@ -360,7 +343,13 @@ public class Matrix3D implements Serializable {
     }
 
     public Matrix3D getConvertByMultiply(Matrix3D data) {
-        return new Matrix3D(MatrixExtractor.getMultiply(get(0), data.get(0)));
+        Matrix A = get(0), B = data.get(0);
+        if(A.getN() == B.getM()) {
+            Matrix3D res = new Matrix3D(B.getN(), A.getM(), 1);
+            Gemm.multiply(A, B, res.get(0), false);
+            return res;
+        }
+        return new Matrix3D(MatrixExtractor.getMultiply(A, B));
     }
 
     public String toString() {
@@ -1,7 +1,6 @@
 package ru.mralexeimk.cnn.models;
 
 import ru.mralexeimk.cnn.enums.PaddingFill;
-import ru.mralexeimk.cnn.other.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -12,13 +11,7 @@ public class MatrixExtractor {
      * @return Sum of matrix and scalar
      */
     public static Matrix getSum(Matrix A, double val) {
-        Matrix res = new Matrix(A.N, A.M);
-        for(int x = 0; x < A.N; ++x) {
-            for(int y = 0; y < A.M; ++y) {
-                res.set(x, y, A.get(x, y) + val);
-            }
-        }
-        return res;
+        return new Matrix(A).sum(val);
     }
 
     /**
@@ -32,39 +25,21 @@ public class MatrixExtractor {
      * @return Sum of two matrices (A+B)
      */
     public static Matrix getSum(Matrix A, Matrix B) {
-        Matrix res = new Matrix(A.N, A.M);
-        for(int x = 0; x < A.N; ++x) {
-            for(int y = 0; y < A.M; ++y) {
-                res.set(x, y, A.get(x, y) + B.get(x, y));
-            }
-        }
-        return res;
+        return new Matrix(A).sum(B);
     }
 
     /**
      * @return Diff of two matrices (A-B)
      */
     public static Matrix getDiff(Matrix A, Matrix B) {
-        Matrix res = new Matrix(A.N, A.M);
-        for(int x = 0; x < A.N; ++x) {
-            for(int y = 0; y < A.M; ++y) {
-                res.set(x, y, A.get(x, y) - B.get(x, y));
-            }
-        }
-        return res;
+        return new Matrix(A).diff(B);
     }
 
     /**
      * @return Multiply of matrix and scalar
      */
     public static Matrix getMultiply(Matrix A, double val) {
-        Matrix res = new Matrix(A.N, A.M);
-        for(int x = 0; x < A.N; ++x) {
-            for(int y = 0; y < A.M; ++y) {
-                res.set(x, y, A.get(x, y) * val);
-            }
-        }
-        return res;
+        return new Matrix(A).multiply(val);
     }
 
     /**
@@ -72,41 +47,64 @@ public class MatrixExtractor {
      */
     public static Matrix getMultiply(Matrix A, Matrix B) {
         if(A.N == B.getM()) {
-            Matrix res = new Matrix(B.getN(), A.M);
-            for (int y = 0; y < A.M; ++y) {
-                for (int x = 0; x < B.getN(); ++x) {
-                    for(int i = 0; i < A.N; ++i) {
-                        res.set(x, y, res.get(x, y) + A.get(i, y)*B.get(x, i));
-                    }
-                }
-            }
-            return res;
+            return Gemm.multiply(A, B);
         }
         else if(A.N == B.getN() && A.M == B.getM()) {
-            Matrix res = new Matrix(A.N, A.M);
-            for(int y = 0; y < A.M; ++y) {
-                for(int x = 0; x < A.N; ++x) {
-                    res.set(x, y, A.get(x, y) * B.get(x, y));
-                }
-            }
-            return res;
+            return new Matrix(A).multiply(B);
         }
         throw new RuntimeException("Can't multiply matrices");
     }
 
+    /**
+     * @return Multiply op(A)*op(B), op(X) is X^T if X is transposed (read in place, without transposed copy)
+     */
+    public static Matrix getMultiply(Matrix A, boolean transposeA, Matrix B, boolean transposeB) {
+        Matrix res = new Matrix(transposeB ? B.getM() : B.getN(), transposeA ? A.getN() : A.getM());
+        Gemm.multiply(A, transposeA, B, transposeB, res, false);
+        return res;
+    }
+
     /**
      * @return Transposed matrix
      */
     public static Matrix getTransposed(Matrix A) {
         Matrix res = new Matrix(A.M, A.N);
-        for (int x = 0; x < A.N; ++x) {
-            for (int y = 0; y < A.M; ++y) {
-                res.set(y, x, A.get(x, y));
+        for (int y = 0; y < A.M; ++y) {
+            int a = A.index(0, y);
+            for (int x = 0; x < A.N; ++x) {
+                res.data[x*res.N + y] = A.data[a + x];
             }
         }
         return res;
     }
 
+    /**
+     * @return Matrix (N*M*D, count) with i'th Matrix3D of ms flattened into row i
+     */
+    public static Matrix getStacked(List<Matrix3D> ms) {
+        int len = ms.get(0).getBuffer().length;
+        Matrix res = new Matrix(len, ms.size());
+        for(int i = 0; i < ms.size(); ++i) {
+            if(ms.get(i).getBuffer().length != len) throw new RuntimeException("Matrices are different!");
+            System.arraycopy(ms.get(i).getBuffer(), 0, res.data, i*len, len);
+        }
+        return res;
+    }
+
+    /**
+     * @return Rows of A reshaped into Matrix3D (N,M,D) (inverse of getStacked())
+     */
+    public static List<Matrix3D> getUnstacked(Matrix A, int N, int M, int D) {
+        if(A.N != N*M*D) throw new RuntimeException("Can't unstack "+A.getShapes()+" into ("+N+";"+M+";"+D+")");
+        List<Matrix3D> res = new ArrayList<>();
+        for(int y = 0; y < A.M; ++y) {
+            Matrix3D m = new Matrix3D(N, M, D);
+            System.arraycopy(A.data, A.index(0, y), m.getBuffer(), 0, A.N);
+            res.add(m);
+        }
+        return res;
+    }
+
     /**
      * @return Inverse matrix
      */
@@ -195,39 +193,7 @@ public class MatrixExtractor {
      */
     public static Matrix getConvertByKernel(Matrix A, Matrix K, int paddingSizeX, int paddingSizeY,
                                             PaddingFill paddingFill, int stridingSizeX, int stridingSizeY) {
-        if(K.N > A.N || K.M > A.M) throw new RuntimeException("K.N > N or K.M > M");
-        Matrix res = new Matrix(
-                (A.N - K.N + 2 * paddingSizeY) / stridingSizeY + 1,
-                (A.M - K.M + 2 * paddingSizeX) / stridingSizeX + 1
-        );
-        for (int y = 0; y < res.N; ++y) {
-            for (int x = 0; x < res.M; ++x) {
-                double val = 0;
-                double sum = 0;
-                List<Pair<Integer, Integer>> paddingZones = new ArrayList<>();
-                for (int x1 = x * stridingSizeX - paddingSizeX;
-                     x1 < x * stridingSizeX - paddingSizeX + K.M; ++x1) {
-                    for (int y1 = y * stridingSizeY - paddingSizeY;
-                         y1 < y * stridingSizeY - paddingSizeY + K.N; ++y1) {
-                        if (x1 >= 0 && x1 < A.M && y1 >= 0 && y1 < A.N) {
-                            val += A.get(x1, y1) * K.get(x1 - x * stridingSizeX + paddingSizeX,
-                                    y1 - y * stridingSizeY + paddingSizeY);
-                            sum += A.get(x1, y1);
-                        }
-                        else {
-                            if (paddingFill == PaddingFill.BY_MEDIAN) paddingZones.add(new Pair<>(x1, y1));
-                        }
-                    }
-                }
-                sum /= (K.N * K.M - paddingZones.size());
-                for (Pair<Integer, Integer> p : paddingZones) {
-                    val += sum * K.get(p.getFirst() - x * stridingSizeX + paddingSizeX,
-                            p.getSecond() - y * stridingSizeY + paddingSizeY);
-                }
-                res.set(x, y, val);
-            }
-        }
-        return res;
+        return Convolution.convert(A, K, paddingSizeX, paddingSizeY, paddingFill, stridingSizeX, stridingSizeY);
     }
 
     /**
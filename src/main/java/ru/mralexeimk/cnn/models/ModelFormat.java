@@ -0,0 +1,174 @@
+package ru.mralexeimk.cnn.models;
+
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.LayerType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.events.ModelIOEvent;
+import ru.mralexeimk.cnn.layers.PullingLayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file of NeuralNetwork (little-endian):
+ * header - magic "CNNW", version, learning rate, id, count of layers and for every layer
+ * its type, sizes (X,Y,D), activation function and pulling type (-1 if not PullingLayer);
+ * then for every layer shapes of W (N,M,D, zeroes if no W), count of biases and raw values of W and biases.
+ * File is read through FileChannel.map without Java deserialization and replaced atomically on write,
+ * so failed write keeps the previous file
+ */
+public class ModelFormat {
+    public static final int MAGIC = 0x574E4E43;
+    public static final int VERSION = 1;
+
+    public static void write(NeuralNetwork nn, File file) throws IOException {
+        ModelIOEvent event = new ModelIOEvent();
+        event.begin();
+        try {
+            writeFile(nn, file);
+            event.success = true;
+        } finally {
+            commit(event, "write", file);
+        }
+    }
+
+    /**
+     * Load architecture and weights from file into nn
+     */
+    public static void read(File file, NeuralNetwork nn) throws IOException {
+        ModelIOEvent event = new ModelIOEvent();
+        event.begin();
+        try {
+            readFile(file, nn);
+            event.success = true;
+        } finally {
+            commit(event, "read", file);
+        }
+    }
+
+    private static void commit(ModelIOEvent event, String operation, File file) {
+        event.end();
+        if(event.shouldCommit()) {
+            event.operation = operation;
+            event.path = file.getPath();
+            event.bytes = file.length();
+            event.commit();
+        }
+    }
+
+    private static void writeFile(NeuralNetwork nn, File file) throws IOException {
+        byte[] id = nn.getId().getBytes(StandardCharsets.UTF_8);
+        int size = 4 + 4 + 8 + 4 + id.length + 4;
+        for(Layer layer : nn.getLayers()) {
+            size += 1 + 3*4 + 1 + 1 + 3*4 + 4 + 8*layer.getBiases().size();
+            if(layer.getW() != null) size += 8*layer.getW().getBuffer().length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putDouble(nn.getLearningRate());
+        buf.putInt(id.length).put(id);
+        buf.putInt(nn.getLayers().size());
+        for(Layer layer : nn.getLayers()) {
+            buf.put((byte) layer.getLayerType().ordinal());
+            buf.putInt(layer.getSizeX()).putInt(layer.getSizeY()).putInt(layer.getSizeD());
+            buf.put((byte) layer.getActivationFunType().ordinal());
+            buf.put((byte) (layer instanceof PullingLayer pl ? pl.getPullingType().ordinal() : -1));
+        }
+        for(Layer layer : nn.getLayers()) {
+            Matrix3D W = layer.getW();
+            if(W != null) buf.putInt(W.getN()).putInt(W.getM()).putInt(W.getD());
+            else buf.putInt(0).putInt(0).putInt(0);
+            buf.putInt(layer.getBiases().size());
+            if(W != null) buf.asDoubleBuffer().put(W.getBuffer());
+            buf.position(buf.position() + (W != null ? 8*W.getBuffer().length : 0));
+            for(double bias : layer.getBiases()) buf.putDouble(bias);
+        }
+        buf.flip();
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+        Path tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while(buf.hasRemaining()) channel.write(buf);
+                channel.force(true);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    private static void readFile(File file, NeuralNetwork nn) throws IOException {
+        MappedByteBuffer map;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            readBuffer(map.order(ByteOrder.LITTLE_ENDIAN), file, nn);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated model file: "+file, e);
+        }
+    }
+
+    private static void readBuffer(ByteBuffer buf, File file, NeuralNetwork nn) throws IOException {
+        if(buf.getInt() != MAGIC) throw new IOException("Not a model file: "+file);
+        int version = buf.getInt();
+        if(version != VERSION) throw new IOException("Unsupported model version "+version+" in "+file);
+        double learningRate = buf.getDouble();
+        int idLength = buf.getInt();
+        if(idLength < 0 || idLength > buf.remaining()) throw new IOException("Incorrect id length in "+file);
+        byte[] id = new byte[idLength];
+        buf.get(id);
+        int count = buf.getInt();
+        if(count < 2 || count > buf.remaining()) throw new IOException("Incorrect count of layers in "+file);
+        List<Layer> layers = new ArrayList<>();
+        for(int i = 0; i < count; ++i) {
+            LayerType layerType = getValue(LayerType.values(), buf.get(), "layer type", file);
+            int sizeX = buf.getInt(), sizeY = buf.getInt(), sizeD = buf.getInt();
+            if(sizeX < 1 || sizeY < 1 || sizeD < 1) throw new IOException("Incorrect sizes of layer "+i+" in "+file);
+            ActivationFunType activationFunType = getValue(ActivationFunType.values(), buf.get(),
+                    "activation function", file);
+            byte pullingType = buf.get();
+            if(layerType == LayerType.PULLING ? pullingType < 0 : pullingType != -1) {
+                throw new IOException("Incorrect pulling type of layer "+i+" in "+file);
+            }
+            layers.add(Layer.createLayer(layerType, sizeX, sizeY, sizeD, activationFunType,
+                    pullingType >= 0 ? getValue(PullingType.values(), pullingType, "pulling type", file) : null));
+        }
+        nn.load(new String(id, StandardCharsets.UTF_8), layers, learningRate);
+        for(Layer layer : layers) {
+            Matrix3D W = layer.getW();
+            int N = buf.getInt(), M = buf.getInt(), D = buf.getInt();
+            int biases = buf.getInt();
+            if(W == null ? N*M*D != 0 : W.getN() != N || W.getM() != M || W.getD() != D) {
+                throw new IOException("Incorrect weights of "+layer+" in "+file);
+            }
+            if(biases != layer.getBiases().size()) throw new IOException("Incorrect biases of "+layer+" in "+file);
+            if(W != null) {
+                buf.asDoubleBuffer().get(W.getBuffer());
+                buf.position(buf.position() + 8*W.getBuffer().length);
+            }
+            for(int i = 0; i < biases; ++i) layer.setBias(i, buf.getDouble());
+        }
+    }
+
+    /**
+     * @return Value of enum by ordinal read from file
+     */
+    private static <T> T getValue(T[] values, int ordinal, String name, File file) throws IOException {
+        if(ordinal < 0 || ordinal >= values.length) throw new IOException("Incorrect "+name+" "+ordinal+" in "+file);
+        return values[ordinal];
+    }
+}
@@ -0,0 +1,27 @@
+package ru.mralexeimk.cnn.models;
+
+/**
+ * Receives timings of NeuralNetwork (see NeuralNetwork.setListener(), null by default - no timings are taken).
+ * Methods may be called concurrently by threads of trainBatch()
+ */
+public interface NetworkListener {
+    /**
+     * Forward step of layer index (data of layer into data of next layer) took nanos
+     */
+    default void onForward(int index, Layer layer, long nanos) {}
+
+    /**
+     * Backward step of layer index (update of its weights and errors of previous layer) took nanos
+     */
+    default void onBackward(int index, Layer layer, long nanos) {}
+
+    /**
+     * Training on samples (single sample or batch) took nanos
+     */
+    default void onTrain(int samples, long nanos) {}
+
+    /**
+     * Epoch of train(Dataset, int, boolean) on samples took nanos
+     */
+    default void onEpoch(int epoch, int samples, long nanos) {}
+}
@@ -0,0 +1,100 @@
+package ru.mralexeimk.cnn.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * NetworkListener summing wall time of every layer for forward and backward steps,
+ * trained samples per second and durations of epochs
+ */
+public class NetworkMetrics implements NetworkListener {
+    private long[] forwardNanos = new long[0], backwardNanos = new long[0];
+    private String[] names = new String[0];
+    private long samples, trainNanos;
+    private final List<Long> epochNanos = new ArrayList<>();
+
+    @Override
+    public synchronized void onForward(int index, Layer layer, long nanos) {
+        ensureLayer(index, layer);
+        forwardNanos[index] += nanos;
+    }
+
+    @Override
+    public synchronized void onBackward(int index, Layer layer, long nanos) {
+        ensureLayer(index, layer);
+        backwardNanos[index] += nanos;
+    }
+
+    @Override
+    public synchronized void onTrain(int samples, long nanos) {
+        this.samples += samples;
+        trainNanos += nanos;
+    }
+
+    @Override
+    public synchronized void onEpoch(int epoch, int samples, long nanos) {
+        epochNanos.add(nanos);
+    }
+
+    private void ensureLayer(int index, Layer layer) {
+        if(index >= names.length) {
+            forwardNanos = Arrays.copyOf(forwardNanos, index+1);
+            backwardNanos = Arrays.copyOf(backwardNanos, index+1);
+            names = Arrays.copyOf(names, index+1);
+        }
+        if(names[index] == null) names[index] = layer.toString();
+    }
+
+    public synchronized int getLayersCount() {
+        return names.length;
+    }
+
+    public synchronized long getForwardNanos(int index) {
+        return index < forwardNanos.length ? forwardNanos[index] : 0;
+    }
+
+    public synchronized long getBackwardNanos(int index) {
+        return index < backwardNanos.length ? backwardNanos[index] : 0;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return Trained samples per second of training time
+     */
+    public synchronized double getSamplesPerSecond() {
+        return trainNanos == 0 ? 0 : samples / (trainNanos / 1e9);
+    }
+
+    /**
+     * @return Durations of epochs in order
+     */
+    public synchronized List<Long> getEpochNanos() {
+        return new ArrayList<>(epochNanos);
+    }
+
+    public synchronized void reset() {
+        forwardNanos = new long[0];
+        backwardNanos = new long[0];
+        names = new String[0];
+        samples = 0;
+        trainNanos = 0;
+        epochNanos.clear();
+    }
+
+    public synchronized void print() {
+        System.out.println("Metrics:");
+        for(int i = 0; i < names.length; ++i) {
+            if(names[i] == null) continue;
+            System.out.println(String.format("  %s - forward: %.3f ms, backward: %.3f ms",
+                    names[i], forwardNanos[i] / 1e6, backwardNanos[i] / 1e6));
+        }
+        System.out.println(String.format("  Samples: %d, %.1f samples/s", samples, getSamplesPerSecond()));
+        for(int i = 0; i < epochNanos.size(); ++i) {
+            System.out.println(String.format("  Epoch %d: %.3f s", i+1, epochNanos.get(i) / 1e9));
+        }
+    }
+}
@@ -1,20 +1,56 @@
 package ru.mralexeimk.cnn.models;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import ru.mralexeimk.cnn.events.LayerBackwardEvent;
+import ru.mralexeimk.cnn.events.LayerForwardEvent;
 import ru.mralexeimk.cnn.layers.*;
 import ru.mralexeimk.cnn.enums.ActivationFunType;
 import ru.mralexeimk.cnn.enums.Direction;
-import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.other.Dataset;
+import ru.mralexeimk.cnn.other.DatasetIterator;
+import ru.mralexeimk.cnn.other.Pair;
 import ru.mralexeimk.cnn.enums.PullingType;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
 
 @Data
 public class NeuralNetwork implements Serializable {
     private String id;
     private List<Layer> layers;
     private double learningRate;
+    /**
+     * Evaluate layers into buffers allocated once in init() (see Layer.doStepInPlace()).
+     * Matrix returned by query() is then overwritten by the next evaluation
+     */
+    private boolean allocationFree;
+    /**
+     * Count of samples per weight update in train(Dataset, int, boolean)
+     */
+    private int batchSize = 1;
+    /**
+     * Count of threads sharing every batch in trainBatch()
+     */
+    private int threads = 1;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient ForkJoinPool pool;
+    /**
+     * Scratch buffers of gradients for every part of batch in trainBatch()
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient List<Layer.Workspace> partWorkspaces;
+    /**
+     * Receives timings of layers, training and epochs (e.g. NetworkMetrics), null - timings are not taken
+     */
+    private transient NetworkListener listener;
 
     private final String defId = "default";
     private final List<Layer> defLayers = new ArrayList<>(List.of(
@@ -86,9 +122,26 @@ public class NeuralNetwork implements Serializable {
         return getOutputLayer().getData().getMatrix();
     }
 
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1) throw new IllegalArgumentException("Incorrect batch size "+batchSize);
+        this.batchSize = batchSize;
+    }
+
+    public void setThreads(int threads) {
+        if(threads < 1) throw new IllegalArgumentException("Incorrect count of threads "+threads);
+        this.threads = threads;
+    }
+
     public void evaluate() {
-        for(Layer layer : layers) {
-            layer.doStep();
+        NetworkListener listener = this.listener;
+        for(int i = 0; i < layers.size(); ++i) {
+            LayerForwardEvent event = new LayerForwardEvent();
+            event.begin();
+            long start = listener != null ? System.nanoTime() : 0;
+            if(allocationFree) layers.get(i).doStepInPlace();
+            else layers.get(i).doStep();
+            if(listener != null) listener.onForward(i, layers.get(i), System.nanoTime() - start);
+            event.finish(i, layers.get(i), 1);
         }
     }
 
@@ -161,112 +214,328 @@ public class NeuralNetwork implements Serializable {
         if(!(layers.get(0) instanceof InputLayer)) throw new RuntimeException("InputLayer not found!");
         if(!(layers.get(layers.size()-1) instanceof OutputLayer)) throw new RuntimeException("OutputLayer not found!");
         if(!check()) throw new RuntimeException("Incorrect NeuralNetwork structure");
+        for(Layer layer : layers) {
+            layer.allocateBuffers();
+        }
     }
 
     public synchronized void train(Matrix3D input, Matrix target) {
+        NetworkListener listener = this.listener;
+        long trainStart = listener != null ? System.nanoTime() : 0;
         setInputLayerData(input);
         evaluate();
         Matrix outputs = getOutputLayerData().clone();
-        Matrix3D errors = new Matrix3D(target.diff(outputs));
+        Matrix3D errors = new Matrix3D(MatrixExtractor.getDiff(target, outputs));
         for(int i = layers.size()-2; i >= 0; --i) {
+            LayerBackwardEvent event = new LayerBackwardEvent();
+            event.begin();
+            long start = listener != null ? System.nanoTime() : 0;
             Layer layer = layers.get(i);
             Layer next = layer.getNextLayer();
             if(layer instanceof NeuronsLayer nl) {
                 Matrix I = nl.getData().getMatrix();
                 Matrix O = next.getData().getMatrix();
                 Matrix error = errors.getMatrix();
-                Matrix dif = MatrixExtractor.getMultiply(error, O)
-                        .multiply(O.getNegative().sum(1))
-                        .multiply(I.getTransposed())
-                        .multiply(learningRate);
-                double biasError = dif.getSum();
+                Matrix delta = MatrixExtractor.getMultiply(error, O).multiply(O.getNegative().sum(1));
+                // sum of learningRate * delta*I^T
+                double biasError = learningRate * delta.getSum() * I.getSum();
                 nl.setBias(0, nl.getBias(0)+biasError);
-                nl.getW().getMatrix().sum(dif);
-                errors = new Matrix3D(nl.getW().getMatrix().getTransposed().multiply(error));
+                nl.getW().getMatrix().addOuter(learningRate, delta, I);
+                errors = new Matrix3D(MatrixExtractor.getMultiply(nl.getW().getMatrix(), true, error, false));
             }
             else if(layer instanceof InputLayer il) {
                 if(next instanceof NeuronsLayer nl) {
                     Matrix I = il.getData().getMatrix();
                     Matrix O = nl.getData().getMatrix();
-                    Matrix error = errors.getMatrix();
-                    Matrix dif = error
+                    Matrix delta = errors.getMatrix()
                             .multiply(O)
-                            .multiply(O.getNegative().sum(1))
-                            .multiply(I.getTransposed())
-                            .multiply(learningRate);
-                    double biasError = dif.getSum();
+                            .multiply(O.getNegative().sum(1));
+                    double biasError = learningRate * delta.getSum() * I.getSum();
                     il.setBias(0, nl.getBias(0)+biasError);
-                    il.getW().getMatrix().sum(dif);
+                    il.getW().getMatrix().addOuter(learningRate, delta, I);
                 }
                 else if(next instanceof FilterLayer fl) {
                     Matrix3D I = il.getData();
-                    Matrix3D O = fl.getData();
-                    int width = il.getW().getN(), height = il.getW().getM();
-                    for(int z = 0; z < O.getD(); ++z) {
-                        double biasError = 0;
-                        for (int y = 0; y < O.getM(); ++y) {
-                            for (int x = 0; x < O.getN(); ++x) {
-                                double o = O.get(x, y, z);
-                                double e = errors.get(x, y, z);
-                                Matrix I_sum = I.get(0).clone();
-                                for(int k = 1; k < I.getD(); ++k) I_sum.sum(I.get(k));
-                                Matrix Ik = I_sum.getSubMatrix(x, y, width, height);
-                                Matrix dif = Ik.multiply(e * o * (1 - o) * learningRate);
-                                biasError += dif.getSum();
-                                il.getW().get(z).sum(dif);
-                            }
-                        }
-                        biasError /= O.getN()*O.getM();
-                        il.setBias(z, il.getBias(z) + biasError);
-                    }
+                    Matrix I_sum = I.get(0).clone();
+                    for(int k = 1; k < I.getD(); ++k) I_sum.sum(I.get(k));
+                    Matrix3D dif = new Matrix3D(il.getW().getN(), il.getW().getM(), il.getW().getD());
+                    ConvolutionGradient.addKernelGradient(I_sum, fl.getData(), errors, 0, dif.getD(), dif,
+                            il.workspace);
+                    updateFilterWeights(il, dif, learningRate, fl.getSizeX()*fl.getSizeY());
                 }
             }
             else if(layer instanceof PullingLayer pl) {
                 if(next instanceof FilterLayer fl) {
                     Matrix3D I = pl.getData();
-                    Matrix3D O = fl.getData();
-                    int width = pl.getW().getN(), height = pl.getW().getM();
-                    Matrix3D nextErrors = new Matrix3D(I.getN(), I.getM(), I.getD());
-                    for(int z = 0; z < O.getD(); ++z) {
-                        double biasError = 0;
-                        int index = z/pl.getDiv();
-                        for(int y = 0; y < O.getM(); ++y) {
-                            for(int x = 0; x < O.getN(); ++x) {
-                                double o = O.get(x, y, z);
-                                double e = errors.get(x, y, z);
-                                Matrix Ik = I.get(index).getSubMatrix(x, y, width, height);
-                                Matrix difE = nextErrors.get(index).getSubMatrix(x, y, width, height).sum(e);
-                                nextErrors.get(index).replace(x, y, difE);
-
-                                Matrix dif = Ik.multiply(e*o*(1-o)*learningRate);
-                                biasError += dif.getSum();
-                                pl.getW().get(z).sum(dif);
-                            }
-                        }
-                        for(int y = 0; y < I.getM(); ++y) {
-                            for(int x = 0; x < I.getN(); ++x) {
-                                int w = Math.min(x+1, width);
-                                int h = Math.min(y+1, height);
-                                nextErrors.get(index).set(x, y, nextErrors.get(index).get(x, y)/(w*h));
-                            }
-                        }
-                        biasError /= O.getN()*O.getM();
-                        pl.setBias(z, pl.getBias(z)+biasError);
+                    Matrix3D dif = new Matrix3D(pl.getW().getN(), pl.getW().getM(), pl.getW().getD());
+                    for(int z = 0; z < dif.getD(); z += pl.getDiv()) {
+                        ConvolutionGradient.addKernelGradient(I.get(z/pl.getDiv()), fl.getData(), errors,
+                                z, Math.min(pl.getDiv(), dif.getD()-z), dif, pl.workspace);
                     }
-                    errors = nextErrors;
+                    errors = getPullingErrors(pl, I, errors, pl.workspace);
+                    updateFilterWeights(pl, dif, learningRate, fl.getSizeX()*fl.getSizeY());
                 }
                 else if(next instanceof NeuronsLayer) {
                     errors.expandLine(pl.getSizeX(), pl.getSizeY(), pl.getSizeD());
                 }
             }
             else if(layer instanceof FilterLayer fl) {
-                if(next instanceof PullingLayer) {
+                if(fl.hasWinners()) {
+                    errors = errors.scatter(fl.getWinners(), new Matrix3D(fl.getSizeX(), fl.getSizeY(), fl.getSizeD()));
+                }
+                else if(next instanceof PullingLayer) {
                     errors.increase(fl.getDiv(), fl.getDiv());
                 }
             }
+            if(listener != null) listener.onBackward(i, layer, System.nanoTime() - start);
+            event.finish(i, layer, 1);
+        }
+        if(listener != null) listener.onTrain(1, System.nanoTime() - trainStart);
+    }
+
+    /**
+     * Train on batch with one weight update per layer: gradients are averaged over the batch.
+     * Batch of Neurons layers is stacked into (units, batch) matrix, so they run through one Gemm.
+     * Batch is split into parts between threads: each part keeps its own data and errors,
+     * gradients of parts are summed before the update
+     */
+    public synchronized void trainBatch(List<Matrix3D> inputs, List<Matrix> targets) {
+        if(inputs.isEmpty() || inputs.size() != targets.size()) {
+            throw new RuntimeException("Incorrect batch: "+inputs.size()+" inputs, "+targets.size()+" targets");
+        }
+        for(Matrix3D input : inputs) {
+            Layer il = getInputLayer();
+            if(input.getN() != il.getSizeX() || input.getM() != il.getSizeY() || input.getD() != il.getSizeD()) {
+                throw new RuntimeException("Incorrect batch input "+input.getShapes()+" for "+il);
+            }
+        }
+        NetworkListener listener = this.listener;
+        long trainStart = listener != null ? System.nanoTime() : 0;
+        int batch = inputs.size();
+        double rate = learningRate/batch;
+        int count = Math.min(threads, batch);
+        List<BatchPart> parts = new ArrayList<>();
+        for(int k = 0; k < count; ++k) {
+            parts.add(new BatchPart(inputs.subList(k*batch/count, (k+1)*batch/count),
+                    targets.subList(k*batch/count, (k+1)*batch/count), getPartWorkspace(k)));
+        }
+        forEachPart(parts, part -> {
+            for(int i = 0; i < layers.size()-1; ++i) {
+                LayerForwardEvent event = new LayerForwardEvent();
+                event.begin();
+                long start = listener != null ? System.nanoTime() : 0;
+                if(layers.get(i) instanceof FilterLayer fl && fl.hasWinners()) {
+                    List<int[]> winners = new ArrayList<>();
+                    part.data.add(fl.doStepBatch(part.data.get(i), winners));
+                    part.winners.put(i, winners);
+                }
+                else part.data.add(layers.get(i).doStepBatch(part.data.get(i)));
+                if(listener != null) listener.onForward(i, layers.get(i), System.nanoTime() - start);
+                event.finish(i, layers.get(i), part.targets.size());
+            }
+            List<Matrix3D> outputs = part.data.get(layers.size()-1);
+            for(int b = 0; b < outputs.size(); ++b) {
+                part.errors.add(new Matrix3D(MatrixExtractor.getDiff(part.targets.get(b), outputs.get(b).getMatrix())));
+            }
+            return null;
+        });
+        for(int i = layers.size()-2; i >= 0; --i) {
+            LayerBackwardEvent event = new LayerBackwardEvent();
+            event.begin();
+            long start = listener != null ? System.nanoTime() : 0;
+            int index = i;
+            Layer layer = layers.get(i);
+            Layer next = layer.getNextLayer();
+            if(layer instanceof NeuronsLayer nl) {
+                Matrix dif = getSum(forEachPart(parts, part -> getNeuronsGradient(part, index, rate)));
+                nl.setBias(0, nl.getBias(0)+dif.getSum());
+                nl.getW().getMatrix().sum(dif);
+                forEachPart(parts, part -> {
+                    part.errors = MatrixExtractor.getUnstacked(
+                            Gemm.multiply(MatrixExtractor.getStacked(part.errors), nl.getW().getMatrix()),
+                            nl.getSizeX(), nl.getSizeY(), nl.getSizeD());
+                    return null;
+                });
+            }
+            else if(layer instanceof InputLayer il) {
+                if(next instanceof NeuronsLayer nl) {
+                    Matrix dif = getSum(forEachPart(parts, part -> getNeuronsGradient(part, index, rate)));
+                    il.setBias(0, nl.getBias(0)+dif.getSum());
+                    il.getW().getMatrix().sum(dif);
+                }
+                else if(next instanceof FilterLayer fl) {
+                    Matrix3D dif = getSum3D(forEachPart(parts, part -> {
+                        Matrix3D res = new Matrix3D(il.getW().getN(), il.getW().getM(), il.getW().getD());
+                        List<Matrix3D> I = part.data.get(index);
+                        for(int b = 0; b < I.size(); ++b) {
+                            Matrix I_sum = I.get(b).get(0).clone();
+                            for(int k = 1; k < I.get(b).getD(); ++k) I_sum.sum(I.get(b).get(k));
+                            ConvolutionGradient.addKernelGradient(I_sum, part.data.get(index+1).get(b),
+                                    part.errors.get(b), 0, res.getD(), res, part.workspace);
+                        }
+                        return res;
+                    }));
+                    updateFilterWeights(il, dif, rate, fl.getSizeX()*fl.getSizeY());
+                }
+            }
+            else if(layer instanceof PullingLayer pl) {
+                if(next instanceof FilterLayer fl) {
+                    Matrix3D dif = getSum3D(forEachPart(parts, part -> {
+                        Matrix3D res = new Matrix3D(pl.getW().getN(), pl.getW().getM(), pl.getW().getD());
+                        List<Matrix3D> I = part.data.get(index);
+                        for(int b = 0; b < I.size(); ++b) {
+                            for(int z = 0; z < res.getD(); z += pl.getDiv()) {
+                                ConvolutionGradient.addKernelGradient(I.get(b).get(z/pl.getDiv()),
+                                        part.data.get(index+1).get(b), part.errors.get(b),
+                                        z, Math.min(pl.getDiv(), res.getD()-z), res, part.workspace);
+                            }
+                            part.errors.set(b, getPullingErrors(pl, I.get(b), part.errors.get(b), part.workspace));
+                        }
+                        return res;
+                    }));
+                    updateFilterWeights(pl, dif, rate, fl.getSizeX()*fl.getSizeY());
+                }
+                else if(next instanceof NeuronsLayer) {
+                    for(BatchPart part : parts) {
+                        for(Matrix3D error : part.errors) error.expandLine(pl.getSizeX(), pl.getSizeY(), pl.getSizeD());
+                    }
+                }
+            }
+            else if(layer instanceof FilterLayer fl) {
+                if(fl.hasWinners()) {
+                    forEachPart(parts, part -> {
+                        for(int b = 0; b < part.errors.size(); ++b) {
+                            part.errors.set(b, part.errors.get(b).scatter(part.winners.get(index).get(b),
+                                    new Matrix3D(fl.getSizeX(), fl.getSizeY(), fl.getSizeD())));
+                        }
+                        return null;
+                    });
+                }
+                else if(next instanceof PullingLayer) {
+                    forEachPart(parts, part -> {
+                        for(Matrix3D error : part.errors) error.increase(fl.getDiv(), fl.getDiv());
+                        return null;
+                    });
+                }
+            }
+            if(listener != null) listener.onBackward(i, layer, System.nanoTime() - start);
+            event.finish(i, layer, batch);
+        }
+        if(listener != null) listener.onTrain(batch, System.nanoTime() - trainStart);
+    }
+
+    /**
+     * Part of batch in trainBatch(): data of every layer, winners of MAX/MIN pulling by index of FilterLayer,
+     * errors of current layer for its samples and scratch buffers of gradients (kept by network for every part)
+     */
+    private static class BatchPart {
+        private final List<List<Matrix3D>> data = new ArrayList<>();
+        private final Map<Integer, List<int[]>> winners = new HashMap<>();
+        private final List<Matrix> targets;
+        private final Layer.Workspace workspace;
+        private List<Matrix3D> errors = new ArrayList<>();
+
+        private BatchPart(List<Matrix3D> inputs, List<Matrix> targets, Layer.Workspace workspace) {
+            data.add(inputs);
+            this.targets = targets;
+            this.workspace = workspace;
+        }
+    }
+
+    /**
+     * @return Results of fun for every part (in order), parts are processed by threads of the pool
+     */
+    private <T> List<T> forEachPart(List<BatchPart> parts, Function<BatchPart, T> fun) {
+        List<T> res = new ArrayList<>();
+        if(parts.size() == 1) {
+            res.add(fun.apply(parts.get(0)));
+            return res;
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for(BatchPart part : parts) {
+            tasks.add(getPool().submit(() -> fun.apply(part)));
+        }
+        for(ForkJoinTask<T> task : tasks) {
+            res.add(task.join());
+        }
+        return res;
+    }
+
+    private ForkJoinPool getPool() {
+        if(pool == null || pool.getParallelism() != threads) {
+            if(pool != null) pool.shutdown();
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private Layer.Workspace getPartWorkspace(int k) {
+        if(partWorkspaces == null) partWorkspaces = new ArrayList<>();
+        while(partWorkspaces.size() <= k) partWorkspaces.add(new Layer.Workspace());
+        return partWorkspaces.get(k);
+    }
+
+    private static Matrix getSum(List<Matrix> ms) {
+        Matrix res = ms.get(0);
+        for(int k = 1; k < ms.size(); ++k) res.sum(ms.get(k));
+        return res;
+    }
+
+    private static Matrix3D getSum3D(List<Matrix3D> ms) {
+        Matrix3D res = ms.get(0);
+        for(int k = 1; k < ms.size(); ++k) {
+            for(int z = 0; z < res.getD(); ++z) res.get(z).sum(ms.get(k).get(z));
+        }
+        return res;
+    }
+
+    /**
+     * @return Gradient of weights of layer i on part of batch multiplied by rate
+     */
+    private static Matrix getNeuronsGradient(BatchPart part, int i, double rate) {
+        return getNeuronsGradient(MatrixExtractor.getStacked(part.data.get(i)),
+                MatrixExtractor.getStacked(part.data.get(i+1)), MatrixExtractor.getStacked(part.errors), rate);
+    }
+
+    /**
+     * @return Sum over batch of (error*O*(1-O)) * I^T multiplied by rate (rows of I, O, error are samples)
+     */
+    private static Matrix getNeuronsGradient(Matrix I, Matrix O, Matrix error, double rate) {
+        Matrix delta = new Matrix(error.getN(), error.getM());
+        for(int k = 0; k < delta.data.length; ++k) {
+            double o = O.data[k];
+            delta.data[k] = error.data[k] * o * (1 - o);
+        }
+        return MatrixExtractor.getMultiply(delta, true, I, false).multiply(rate);
+    }
+
+    /**
+     * Add dif (multiplied by rate) to kernels of layer and average of its cells to biases
+     */
+    private static void updateFilterWeights(Layer layer, Matrix3D dif, double rate, int area) {
+        for(int z = 0; z < dif.getD(); ++z) {
+            Matrix d = dif.get(z).multiply(rate);
+            layer.getW().get(z).sum(d);
+            layer.setBias(z, layer.getBias(z)+d.getSum()/area);
         }
     }
 
+    /**
+     * @return Errors of PullingLayer pl: errors of next FilterLayer spread back over windows with weights
+     * of kernels of pl (see ConvolutionGradient.addInputGradient())
+     */
+    private static Matrix3D getPullingErrors(PullingLayer pl, Matrix3D I, Matrix3D errors, Layer.Workspace workspace) {
+        return ConvolutionGradient.addInputGradient(errors, pl.getW(), pl.getDiv(),
+                new Matrix3D(I.getN(), I.getM(), I.getD()), workspace);
+    }
+
+    /**
+     * @return New session for concurrent queries over weights of this network
+     */
+    public InferenceSession createSession() {
+        return new InferenceSession(this);
+    }
+
     public Matrix query(Matrix3D input) {
         setInputLayerData(input);
         evaluate();
@@ -294,26 +563,60 @@ public class NeuralNetwork implements Serializable {
         load(defId, defLayers, defLearningRate);
     }
 
-    public void train(ExtractedData data, int epochs, boolean debug) {
+    /**
+     * Train on every sample of data epochs times, batchSize samples per weight update.
+     * With debug progress is printed on every whole percent (if length of data is known) and after every epoch
+     */
+    public void train(Dataset data, int epochs, boolean debug) {
         if(debug) System.out.println("Starting training...");
         int size = data.getLen()*epochs;
+        int count = 0, percent = 0;
+        List<Matrix3D> inputs = new ArrayList<>();
+        List<Matrix> targets = new ArrayList<>();
         for(int i = 0; i < epochs; ++i) {
-            for(int j = 0; j < data.getLen(); ++j) {
-                train(data.getInputs().get(j), data.getOutputs().get(j));
-                if(debug) System.out.println(String.format("%.3f", 100*(double)(i*data.getLen()+j)/size) + "%");
+            long epochStart = debug || listener != null ? System.nanoTime() : 0;
+            int epochCount = 0;
+            try(DatasetIterator it = data.iterator()) {
+                while(it.hasNext()) {
+                    Pair<Matrix3D, Matrix> sample = it.next();
+                    inputs.add(sample.getFirst());
+                    targets.add(sample.getSecond());
+                    if(inputs.size() == batchSize || !it.hasNext()) {
+                        if(inputs.size() == 1) train(inputs.get(0), targets.get(0));
+                        else trainBatch(inputs, targets);
+                        count += inputs.size();
+                        epochCount += inputs.size();
+                        if(debug && size > 0 && 100L*count/size > percent) {
+                            percent = (int) (100L*count/size);
+                            System.out.println(percent + "%");
+                        }
+                        inputs.clear();
+                        targets.clear();
+                    }
+                }
+            }
+            if(debug || listener != null) {
+                long nanos = System.nanoTime() - epochStart;
+                if(listener != null) listener.onEpoch(i+1, epochCount, nanos);
+                if(debug) System.out.println(String.format("Epoch %d: %d samples, %.3f s, %.1f samples/s",
+                        i+1, epochCount, nanos / 1e9, epochCount / (nanos / 1e9)));
             }
         }
     }
 
-    public double test(ExtractedData data, boolean debug) {
-        int countCorrect = 0;
-        for(int i = 0; i < data.getLen(); ++i) {
-            int label = queryMax(data.getInputs().get(i));
-            int correct = data.getOutputs().get(i).getMaxIndex();
-            if(correct == label) ++countCorrect;
-            if(debug) System.out.println("Correct: " + correct + ", Output: " + label);
+    public double test(Dataset data, boolean debug) {
+        int countCorrect = 0, count = 0;
+        try(DatasetIterator it = data.iterator()) {
+            while(it.hasNext()) {
+                Pair<Matrix3D, Matrix> sample = it.next();
+                int label = queryMax(sample.getFirst());
+                int correct = sample.getSecond().getMaxIndex();
+                if(correct == label) ++countCorrect;
+                ++count;
+                if(debug) System.out.println("Correct: " + correct + ", Output: " + label);
+            }
         }
-        double res = (double)100*countCorrect/data.getLen();
+        double res = (double)100*countCorrect/count;
         if(debug) System.out.println(res + "%");
         return res;
     }
@@ -324,14 +627,8 @@ public class NeuralNetwork implements Serializable {
 
     public synchronized void saveWeights(String id) {
         this.id = id;
-        File file = new File("weights/"+id+".w");
-        file.getParentFile().mkdirs();
         try {
-            file.createNewFile();
-        } catch (Exception ignored) {}
-
-        try (FileOutputStream f = new FileOutputStream(file.getPath()); ObjectOutputStream o = new ObjectOutputStream(f)) {
-            o.writeObject(this);
+            ModelFormat.write(this, new File("weights/"+id+".w"));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -339,10 +636,8 @@ public class NeuralNetwork implements Serializable {
 
     public void loadWeights(String id) {
         this.id = id;
-        File file = new File("weights/"+id+".w");
-        try(FileInputStream fi = new FileInputStream(file.getPath()); ObjectInputStream oi = new ObjectInputStream(fi)) {
-            NeuralNetwork nn = (NeuralNetwork) oi.readObject();
-            load(nn.getId(), nn.getLayers(), nn.getLearningRate());
+        try {
+            ModelFormat.read(new File("weights/"+id+".w"), this);
         } catch (Exception e) {
             toDefault();
         }
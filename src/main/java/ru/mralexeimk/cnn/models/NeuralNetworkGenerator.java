@@ -1,44 +1,238 @@
 package ru.mralexeimk.cnn.models;
 
-import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.layers.PullingLayer;
+import ru.mralexeimk.cnn.other.Dataset;
+import ru.mralexeimk.cnn.other.DatasetIterator;
 import ru.mralexeimk.cnn.other.NeuralNetworkParameters;
+import ru.mralexeimk.cnn.other.Pair;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NeuralNetworkGenerator {
-    public static NeuralNetworkParameters genTheBestNeuralNetwork(ExtractedData trainData,
-                                                                  ExtractedData testData,
+    public static NeuralNetworkParameters genTheBestNeuralNetwork(Dataset trainData,
+                                                                  Dataset testData,
                                                                   List<List<Layer>> layers,
                                                                   double lrFrom, double lrTo,
                                                                   int lrCount,
                                                                   int epochsFrom, int epochsTo) {
+        return genTheBestNeuralNetwork(trainData, testData, layers, lrFrom, lrTo, lrCount, epochsFrom, epochsTo,
+                Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Train and test NeuralNetwork for every architecture of layers and lrCount random learning rates.
+     * Every trial is trained once up to epochsTo and tested after each epoch from epochsFrom,
+     * so it gives results of every count of epochs. Trials run concurrently on threads of bounded pool.
+     * Results are added to parameters and journal as they are tested. Search with existing journal
+     * (see TrialJournal) resumes it: journaled results are added to parameters and not tested again.
+     * Journal belongs to datasets, architectures, learning rates and epochs of search
+     * @param journalFile Journal of search or null (search isn't journaled)
+     */
+    public static NeuralNetworkParameters genTheBestNeuralNetwork(Dataset trainData,
+                                                                  Dataset testData,
+                                                                  List<List<Layer>> layers,
+                                                                  double lrFrom, double lrTo,
+                                                                  int lrCount,
+                                                                  int epochsFrom, int epochsTo,
+                                                                  int threads, File journalFile) {
         NeuralNetworkParameters parameters = new NeuralNetworkParameters();
         System.out.println("Starting...");
-        try(PrintWriter writer = new PrintWriter("log.txt", StandardCharsets.UTF_8)) {
-            for (int i = 0; i < layers.size(); ++i) {
-                for (int epochs = epochsFrom; epochs <= epochsTo; ++epochs) {
-                    for (int j = 0; j < lrCount; ++j) {
-                        double lr = lrFrom + new Random().nextDouble() * (lrTo - lrFrom);
-                        NeuralNetwork nn = new NeuralNetwork("mnist", layers.get(i), lr);
-                        nn.train(trainData, epochs, false);
-                        double nextRes = nn.test(testData, false);
-                        parameters.add(i, lr, epochs, nextRes);
-                        String log = i + " - lr: " + lr + ", epochs: " + epochs + ", res: " + nextRes + "%";
-                        System.out.println(log);
-                        writer.println(log);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try(TrialJournal journal = openJournal(journalFile, trainData, testData, layers, lrFrom, lrTo, lrCount,
+                "epochs=" + epochsFrom + ".." + epochsTo, parameters)) {
+            List<Callable<Void>> trials = new ArrayList<>();
+            for (Trial trial : createTrials(layers, lrFrom, lrTo, lrCount, journal)) {
+                trials.add(() -> {
+                    for (int epochs = epochsFrom; epochs <= epochsTo; ++epochs) {
+                        trial.evaluate(epochs, trainData, testData, parameters);
                     }
+                    return null;
+                });
+            }
+            invokeAll(pool, trials);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.println("===================================");
+        return parameters;
+    }
+
+    /**
+     * Successive halving over every architecture of layers and lrCount random learning rates:
+     * all trials are trained minEpochs epochs and tested, best 1/eta of them (at least one) are trained
+     * further up to eta times more epochs and so on until one trial is left or maxEpochs is reached.
+     * Every test is added to parameters (see NeuralNetworkParameters.getTop()) and journal.
+     * Trials of every round run concurrently on threads of bounded pool and search is resumed
+     * from journal (or not journaled if journalFile is null) like in genTheBestNeuralNetwork()
+     */
+    public static NeuralNetworkParameters genBySuccessiveHalving(Dataset trainData,
+                                                                 Dataset testData,
+                                                                 List<List<Layer>> layers,
+                                                                 double lrFrom, double lrTo,
+                                                                 int lrCount,
+                                                                 int minEpochs, int maxEpochs, int eta,
+                                                                 int threads, File journalFile) {
+        if (minEpochs < 1 || maxEpochs < minEpochs || eta < 2) {
+            throw new IllegalArgumentException("Incorrect budget: epochs "+minEpochs+".."+maxEpochs+", eta "+eta);
+        }
+        NeuralNetworkParameters parameters = new NeuralNetworkParameters();
+        System.out.println("Starting...");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try(TrialJournal journal = openJournal(journalFile, trainData, testData, layers, lrFrom, lrTo, lrCount,
+                "halving=" + minEpochs + ".." + maxEpochs + "/" + eta, parameters)) {
+            List<Trial> alive = createTrials(layers, lrFrom, lrTo, lrCount, journal);
+            int epochs = minEpochs;
+            while (true) {
+                int budget = epochs;
+                List<Callable<Void>> trials = new ArrayList<>();
+                for (Trial trial : alive) {
+                    trials.add(() -> {
+                        trial.evaluate(budget, trainData, testData, parameters);
+                        return null;
+                    });
                 }
+                invokeAll(pool, trials);
+                if (alive.size() <= 1 || epochs >= maxEpochs) break;
+                alive.sort((t1, t2) -> Double.compare(t2.res, t1.res));
+                alive = new ArrayList<>(alive.subList(0, (alive.size() + eta - 1) / eta));
+                epochs = (int) Math.min(maxEpochs, (long) epochs * eta);
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        } finally {
+            pool.shutdownNow();
         }
         System.out.println("===================================");
         return parameters;
     }
+
+    /**
+     * Open journal of search and add its results to parameters
+     * @return Journal or null if file is null
+     */
+    private static TrialJournal openJournal(File file, Dataset trainData, Dataset testData, List<List<Layer>> layers,
+                                            double lrFrom, double lrTo, int lrCount, String epochs,
+                                            NeuralNetworkParameters parameters) throws IOException {
+        if (file == null) return null;
+        StringBuilder search = new StringBuilder();
+        for (List<Layer> architecture : layers) {
+            for (Layer layer : architecture) {
+                search.append(layer).append(' ').append(layer.getActivationFunType());
+                if (layer instanceof PullingLayer pl) search.append(' ').append(pl.getPullingType());
+                search.append(';');
+            }
+            search.append('|');
+        }
+        TrialJournal journal = TrialJournal.open(file, "train=" + describe(trainData) + " test=" + describe(testData) +
+                " lr=" + lrFrom + ".." + lrTo + "x" + lrCount + " " + epochs +
+                " layers=" + Integer.toHexString(search.toString().hashCode()));
+        List<TrialJournal.Record> records = journal.getRecords();
+        for (TrialJournal.Record record : records) {
+            parameters.add(record.getIndex(), record.getLr(), record.getEpochs(), record.getRes());
+        }
+        if (!records.isEmpty()) System.out.println("Resumed " + records.size() + " results from " + file);
+        return journal;
+    }
+
+    /**
+     * @return Identity of dataset: count of samples and hash of their content
+     */
+    private static String describe(Dataset data) {
+        int count = 0;
+        long hash = 1;
+        try (DatasetIterator it = data.iterator()) {
+            while (it.hasNext()) {
+                Pair<Matrix3D, Matrix> sample = it.next();
+                hash = 31*hash + Arrays.hashCode(sample.getFirst().getBuffer());
+                hash = 31*hash + sample.getSecond().getMaxIndex();
+                ++count;
+            }
+        }
+        return count + ":" + Long.toHexString(hash);
+    }
+
+    /**
+     * Network of search, created by the first epoch with its own copy of architecture
+     * (see Layer.copyLayers()), so trials never share layers. Datasets are only iterated,
+     * every trial through its own iterator
+     */
+    private static class Trial {
+        private final int index, lrIndex;
+        private final double lr;
+        private final List<Layer> layers;
+        private final TrialJournal journal;
+        private NeuralNetwork nn;
+        private int trainedEpochs;
+        private double res;
+
+        private Trial(int index, int lrIndex, double lr, List<Layer> layers, TrialJournal journal) {
+            this.index = index;
+            this.lrIndex = lrIndex;
+            this.lr = lr;
+            this.layers = layers;
+            this.journal = journal;
+        }
+
+        /**
+         * Train network up to epochs and test it, or take result from journal
+         */
+        private void evaluate(int epochs, Dataset trainData, Dataset testData, NeuralNetworkParameters parameters)
+                throws IOException {
+            TrialJournal.Record record = journal == null ? null : journal.get(index, lrIndex, epochs);
+            if (record != null) {
+                res = record.getRes();
+                return;
+            }
+            if (nn == null) nn = new NeuralNetwork("mnist", Layer.copyLayers(layers), lr);
+            for (; trainedEpochs < epochs; ++trainedEpochs) nn.train(trainData, 1, false);
+            res = nn.test(testData, false);
+            if (journal != null) journal.append(new TrialJournal.Record(index, lrIndex, lr, epochs, res));
+            parameters.add(index, lr, epochs, res);
+            System.out.println(index + " - lr: " + lr + ", epochs: " + epochs + ", res: " + res + "%");
+        }
+    }
+
+    /**
+     * @return Trials of search, learning rates are generated by seed of journal (same on resume) if it isn't null
+     */
+    private static List<Trial> createTrials(List<List<Layer>> layers, double lrFrom, double lrTo, int lrCount,
+                                            TrialJournal journal) {
+        List<Trial> res = new ArrayList<>();
+        Random random = journal == null ? new Random() : new Random(journal.getSeed());
+        for (int i = 0; i < layers.size(); ++i) {
+            for (int j = 0; j < lrCount; ++j) {
+                res.add(new Trial(i, j, lrFrom + random.nextDouble() * (lrTo - lrFrom), layers.get(i), journal));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Run trials on pool and wait for all of them
+     */
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> trials) {
+        try {
+            for (Future<Void> trial : pool.invokeAll(trials)) {
+                trial.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Search is interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Trial failed: "+e.getCause().getMessage(), e.getCause());
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package ru.mralexeimk.cnn.models;
+
+class ScalarKernels extends Kernels {
+    @Override
+    public void add(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] += b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] -= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] *= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void add(double[] a, int aOffset, double val, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] += val;
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOffset, double val, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] *= val;
+        }
+    }
+
+    @Override
+    public void axpy(double[] a, int aOffset, double val, double[] b, int bOffset, int len) {
+        for(int i = 0; i < len; ++i) {
+            a[aOffset + i] += val * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public double sum(double[] a, int aOffset, int len) {
+        double res = 0;
+        for(int i = 0; i < len; ++i) {
+            res += a[aOffset + i];
+        }
+        return res;
+    }
+
+    /**
+     * Split block into 4x4 register tiles
+     */
+    @Override
+    public void gemmBlock(int m, int n, int k,
+                          double[] a, int aOffset, int lda,
+                          double[] b, int bOffset, int ldb,
+                          double[] c, int cOffset, int ldc) {
+        int i = 0;
+        for(; i + 4 <= m; i += 4) {
+            int j = 0;
+            for(; j + 4 <= n; j += 4) {
+                kernel4x4(k, a, aOffset + i*lda, lda, b, bOffset + j, ldb, c, cOffset + i*ldc + j, ldc);
+            }
+            for(; j < n; ++j) {
+                kernel4x1(k, a, aOffset + i*lda, lda, b, bOffset + j, ldb, c, cOffset + i*ldc + j, ldc);
+            }
+        }
+        for(; i < m; ++i) {
+            int aRow = aOffset + i*lda, cRow = cOffset + i*ldc;
+            for(int p = 0; p < k; ++p) {
+                double v = a[aRow + p];
+                int bRow = bOffset + p*ldb;
+                for(int j = 0; j < n; ++j) {
+                    c[cRow + j] += v * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows of A are read contiguously, four at a time
+     */
+    @Override
+    public void gemv(int m, int k,
+                     double[] a, int aOffset, int lda,
+                     double[] b, int bOffset, int ldb,
+                     double[] c, int cOffset, int ldc) {
+        int i = 0;
+        for(; i + 4 <= m; i += 4) {
+            kernel4x1(k, a, aOffset + i*lda, lda, b, bOffset, ldb, c, cOffset + i*ldc, ldc);
+        }
+        for(; i < m; ++i) {
+            int aRow = aOffset + i*lda;
+            double val = 0;
+            for(int p = 0; p < k; ++p) {
+                val += a[aRow + p] * b[bOffset + p*ldb];
+            }
+            c[cOffset + i*ldc] += val;
+        }
+    }
+
+    private static void kernel4x4(int k, double[] a, int aOffset, int lda,
+                                  double[] b, int bOffset, int ldb,
+                                  double[] c, int cOffset, int ldc) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        int a0 = aOffset, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+        for(int p = 0; p < k; ++p) {
+            int bRow = bOffset + p*ldb;
+            double b0 = b[bRow], b1 = b[bRow + 1], b2 = b[bRow + 2], b3 = b[bRow + 3];
+            double v0 = a[a0 + p], v1 = a[a1 + p], v2 = a[a2 + p], v3 = a[a3 + p];
+            c00 += v0*b0; c01 += v0*b1; c02 += v0*b2; c03 += v0*b3;
+            c10 += v1*b0; c11 += v1*b1; c12 += v1*b2; c13 += v1*b3;
+            c20 += v2*b0; c21 += v2*b1; c22 += v2*b2; c23 += v2*b3;
+            c30 += v3*b0; c31 += v3*b1; c32 += v3*b2; c33 += v3*b3;
+        }
+        int r0 = cOffset, r1 = r0 + ldc, r2 = r1 + ldc, r3 = r2 + ldc;
+        c[r0] += c00; c[r0 + 1] += c01; c[r0 + 2] += c02; c[r0 + 3] += c03;
+        c[r1] += c10; c[r1 + 1] += c11; c[r1 + 2] += c12; c[r1 + 3] += c13;
+        c[r2] += c20; c[r2 + 1] += c21; c[r2 + 2] += c22; c[r2 + 3] += c23;
+        c[r3] += c30; c[r3 + 1] += c31; c[r3 + 2] += c32; c[r3 + 3] += c33;
+    }
+
+    static void kernel4x1(int k, double[] a, int aOffset, int lda,
+                          double[] b, int bOffset, int ldb,
+                          double[] c, int cOffset, int ldc) {
+        double c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int a0 = aOffset, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+        for(int p = 0; p < k; ++p) {
+            double v = b[bOffset + p*ldb];
+            c0 += a[a0 + p]*v;
+            c1 += a[a1 + p]*v;
+            c2 += a[a2 + p]*v;
+            c3 += a[a3 + p]*v;
+        }
+        c[cOffset] += c0;
+        c[cOffset + ldc] += c1;
+        c[cOffset + 2*ldc] += c2;
+        c[cOffset + 3*ldc] += c3;
+    }
+}
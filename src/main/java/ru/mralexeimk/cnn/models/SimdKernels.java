@@ -0,0 +1,253 @@
+package ru.mralexeimk.cnn.models;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on jdk.incubator.vector, loaded by Kernels only when the module is present
+ */
+class SimdKernels extends Kernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int L = SPECIES.length();
+    private static final ScalarKernels SCALAR = new ScalarKernels();
+
+    SimdKernels() {
+        if(L < 2) throw new UnsupportedOperationException("No SIMD registers for double");
+    }
+
+    @Override
+    public void add(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .add(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] += b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void sub(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] -= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOffset, double[] b, int bOffset, int len) {
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .mul(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] *= b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void add(double[] a, int aOffset, double val, int len) {
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i).add(val).intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] += val;
+        }
+    }
+
+    @Override
+    public void mul(double[] a, int aOffset, double val, int len) {
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i).mul(val).intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] *= val;
+        }
+    }
+
+    @Override
+    public void axpy(double[] a, int aOffset, double val, double[] b, int bOffset, int len) {
+        DoubleVector v = DoubleVector.broadcast(SPECIES, val);
+        int i = 0;
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            DoubleVector.fromArray(SPECIES, b, bOffset + i)
+                    .fma(v, DoubleVector.fromArray(SPECIES, a, aOffset + i))
+                    .intoArray(a, aOffset + i);
+        }
+        for(; i < len; ++i) {
+            a[aOffset + i] += val * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public double sum(double[] a, int aOffset, int len) {
+        int i = 0;
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        for(int bound = SPECIES.loopBound(len); i < bound; i += L) {
+            acc = acc.add(DoubleVector.fromArray(SPECIES, a, aOffset + i));
+        }
+        double res = acc.reduceLanes(VectorOperators.ADD);
+        for(; i < len; ++i) {
+            res += a[aOffset + i];
+        }
+        return res;
+    }
+
+    /**
+     * Split block into register tiles of 4 rows and 2 vectors (then 1 vector) of columns
+     */
+    @Override
+    public void gemmBlock(int m, int n, int k,
+                          double[] a, int aOffset, int lda,
+                          double[] b, int bOffset, int ldb,
+                          double[] c, int cOffset, int ldc) {
+        int i = 0;
+        for(; i + 4 <= m; i += 4) {
+            int j = 0;
+            for(; j + 2*L <= n; j += 2*L) {
+                kernel4x2v(k, a, aOffset + i*lda, lda, b, bOffset + j, ldb, c, cOffset + i*ldc + j, ldc);
+            }
+            for(; j + L <= n; j += L) {
+                kernel4x1v(k, a, aOffset + i*lda, lda, b, bOffset + j, ldb, c, cOffset + i*ldc + j, ldc);
+            }
+            for(; j < n; ++j) {
+                ScalarKernels.kernel4x1(k, a, aOffset + i*lda, lda, b, bOffset + j, ldb, c, cOffset + i*ldc + j, ldc);
+            }
+        }
+        for(; i < m; ++i) {
+            int aRow = aOffset + i*lda, cRow = cOffset + i*ldc;
+            int bound = SPECIES.loopBound(n);
+            for(int p = 0; p < k; ++p) {
+                double v = a[aRow + p];
+                DoubleVector vv = DoubleVector.broadcast(SPECIES, v);
+                int bRow = bOffset + p*ldb;
+                int j = 0;
+                for(; j < bound; j += L) {
+                    DoubleVector.fromArray(SPECIES, b, bRow + j)
+                            .fma(vv, DoubleVector.fromArray(SPECIES, c, cRow + j))
+                            .intoArray(c, cRow + j);
+                }
+                for(; j < n; ++j) {
+                    c[cRow + j] += v * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows of A are multiplied with contiguous b lane by lane, four rows at a time
+     */
+    @Override
+    public void gemv(int m, int k,
+                     double[] a, int aOffset, int lda,
+                     double[] b, int bOffset, int ldb,
+                     double[] c, int cOffset, int ldc) {
+        if(ldb != 1) {
+            SCALAR.gemv(m, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+            return;
+        }
+        int bound = SPECIES.loopBound(k);
+        int i = 0;
+        for(; i + 4 <= m; i += 4) {
+            int a0 = aOffset + i*lda, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+            DoubleVector c0 = DoubleVector.zero(SPECIES), c1 = c0, c2 = c0, c3 = c0;
+            int p = 0;
+            for(; p < bound; p += L) {
+                DoubleVector v = DoubleVector.fromArray(SPECIES, b, bOffset + p);
+                c0 = DoubleVector.fromArray(SPECIES, a, a0 + p).fma(v, c0);
+                c1 = DoubleVector.fromArray(SPECIES, a, a1 + p).fma(v, c1);
+                c2 = DoubleVector.fromArray(SPECIES, a, a2 + p).fma(v, c2);
+                c3 = DoubleVector.fromArray(SPECIES, a, a3 + p).fma(v, c3);
+            }
+            double s0 = c0.reduceLanes(VectorOperators.ADD), s1 = c1.reduceLanes(VectorOperators.ADD);
+            double s2 = c2.reduceLanes(VectorOperators.ADD), s3 = c3.reduceLanes(VectorOperators.ADD);
+            for(; p < k; ++p) {
+                double v = b[bOffset + p];
+                s0 += a[a0 + p]*v;
+                s1 += a[a1 + p]*v;
+                s2 += a[a2 + p]*v;
+                s3 += a[a3 + p]*v;
+            }
+            c[cOffset + i*ldc] += s0;
+            c[cOffset + (i+1)*ldc] += s1;
+            c[cOffset + (i+2)*ldc] += s2;
+            c[cOffset + (i+3)*ldc] += s3;
+        }
+        for(; i < m; ++i) {
+            int aRow = aOffset + i*lda;
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int p = 0;
+            for(; p < bound; p += L) {
+                acc = DoubleVector.fromArray(SPECIES, a, aRow + p).fma(DoubleVector.fromArray(SPECIES, b, bOffset + p), acc);
+            }
+            double val = acc.reduceLanes(VectorOperators.ADD);
+            for(; p < k; ++p) {
+                val += a[aRow + p] * b[bOffset + p];
+            }
+            c[cOffset + i*ldc] += val;
+        }
+    }
+
+    private static void kernel4x2v(int k, double[] a, int aOffset, int lda,
+                                   double[] b, int bOffset, int ldb,
+                                   double[] c, int cOffset, int ldc) {
+        DoubleVector c00 = DoubleVector.zero(SPECIES), c01 = c00, c10 = c00, c11 = c00;
+        DoubleVector c20 = c00, c21 = c00, c30 = c00, c31 = c00;
+        int a0 = aOffset, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+        for(int p = 0; p < k; ++p) {
+            int bRow = bOffset + p*ldb;
+            DoubleVector b0 = DoubleVector.fromArray(SPECIES, b, bRow);
+            DoubleVector b1 = DoubleVector.fromArray(SPECIES, b, bRow + L);
+            DoubleVector v = DoubleVector.broadcast(SPECIES, a[a0 + p]);
+            c00 = v.fma(b0, c00); c01 = v.fma(b1, c01);
+            v = DoubleVector.broadcast(SPECIES, a[a1 + p]);
+            c10 = v.fma(b0, c10); c11 = v.fma(b1, c11);
+            v = DoubleVector.broadcast(SPECIES, a[a2 + p]);
+            c20 = v.fma(b0, c20); c21 = v.fma(b1, c21);
+            v = DoubleVector.broadcast(SPECIES, a[a3 + p]);
+            c30 = v.fma(b0, c30); c31 = v.fma(b1, c31);
+        }
+        int r = cOffset;
+        addInto(c00, c, r); addInto(c01, c, r + L);
+        r += ldc;
+        addInto(c10, c, r); addInto(c11, c, r + L);
+        r += ldc;
+        addInto(c20, c, r); addInto(c21, c, r + L);
+        r += ldc;
+        addInto(c30, c, r); addInto(c31, c, r + L);
+    }
+
+    private static void kernel4x1v(int k, double[] a, int aOffset, int lda,
+                                   double[] b, int bOffset, int ldb,
+                                   double[] c, int cOffset, int ldc) {
+        DoubleVector c0 = DoubleVector.zero(SPECIES), c1 = c0, c2 = c0, c3 = c0;
+        int a0 = aOffset, a1 = a0 + lda, a2 = a1 + lda, a3 = a2 + lda;
+        for(int p = 0; p < k; ++p) {
+            DoubleVector v = DoubleVector.fromArray(SPECIES, b, bOffset + p*ldb);
+            c0 = v.fma(DoubleVector.broadcast(SPECIES, a[a0 + p]), c0);
+            c1 = v.fma(DoubleVector.broadcast(SPECIES, a[a1 + p]), c1);
+            c2 = v.fma(DoubleVector.broadcast(SPECIES, a[a2 + p]), c2);
+            c3 = v.fma(DoubleVector.broadcast(SPECIES, a[a3 + p]), c3);
+        }
+        addInto(c0, c, cOffset);
+        addInto(c1, c, cOffset + ldc);
+        addInto(c2, c, cOffset + 2*ldc);
+        addInto(c3, c, cOffset + 3*ldc);
+    }
+
+    private static void addInto(DoubleVector v, double[] c, int offset) {
+        v.add(DoubleVector.fromArray(SPECIES, c, offset)).intoArray(c, offset);
+    }
+}
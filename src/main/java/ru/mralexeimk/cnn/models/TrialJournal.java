@@ -0,0 +1,140 @@
+package ru.mralexeimk.cnn.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Append-only journal of tested trials of NeuralNetworkGenerator (UTF-8 text):
+ * header "# CNN trial journal 1 seed=[seed] search=[search]", then line per test
+ * "index,lrIndex,lr,epochs,res" - architecture index, index of learning rate of architecture,
+ * learning rate, count of trained epochs and result (%).
+ * Every record is forced to disk before append() returns. Incomplete last line (after crash) is dropped on open
+ */
+public class TrialJournal implements Closeable {
+    public static final int VERSION = 1;
+    private static final String HEADER = "# CNN trial journal " + VERSION + " ";
+
+    private final FileChannel channel;
+    private final long seed;
+    private final List<Record> records = new ArrayList<>();
+    private final Map<String, Record> index = new HashMap<>();
+
+    @Data
+    @AllArgsConstructor
+    public static class Record {
+        private int index;
+        private int lrIndex;
+        private double lr;
+        private int epochs;
+        private double res;
+
+        public String toString() {
+            return index+","+lrIndex+","+lr+","+epochs+","+res;
+        }
+    }
+
+    private TrialJournal(FileChannel channel, long seed) {
+        this.channel = channel;
+        this.seed = seed;
+    }
+
+    /**
+     * Open journal of search (or create it with random seed)
+     * @param search Description of search, journal of other search is not accepted
+     */
+    public static TrialJournal open(File file, String search) throws IOException {
+        if(file.getParentFile() != null) file.getParentFile().mkdirs();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+            while(buf.hasRemaining() && channel.read(buf, buf.position()) >= 0);
+            String text = new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8);
+            text = text.substring(0, text.lastIndexOf('\n') + 1);
+            if(text.isEmpty()) {
+                channel.truncate(0);
+                TrialJournal journal = new TrialJournal(channel, new Random().nextLong());
+                journal.write(HEADER + "seed=" + journal.seed + " search=" + search + "\n");
+                return journal;
+            }
+            String[] lines = text.split("\n");
+            if(!lines[0].startsWith(HEADER + "seed=")) throw new IOException("Not a trial journal: "+file);
+            String[] header = lines[0].substring(HEADER.length()).split(" ", 2);
+            if(header.length != 2 || !header[1].equals("search=" + search)) {
+                throw new IOException("Journal "+file+" belongs to another search");
+            }
+            TrialJournal journal = new TrialJournal(channel, Long.parseLong(header[0].substring("seed=".length())));
+            for(int i = 1; i < lines.length; ++i) {
+                try {
+                    String[] values = lines[i].split(",");
+                    journal.put(new Record(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+                            Double.parseDouble(values[2]), Integer.parseInt(values[3]), Double.parseDouble(values[4])));
+                } catch (RuntimeException e) {
+                    throw new IOException("Incorrect line "+(i+1)+" of "+file, e);
+                }
+            }
+            channel.truncate(text.getBytes(StandardCharsets.UTF_8).length);
+            channel.force(true);
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Seed of learning rates of search
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return Records in order of append
+     */
+    public synchronized List<Record> getRecords() {
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * @return Record of trial tested after epochs or null
+     */
+    public synchronized Record get(int index, int lrIndex, int epochs) {
+        return this.index.get(index+","+lrIndex+","+epochs);
+    }
+
+    public synchronized void append(Record record) throws IOException {
+        write(record + "\n");
+        put(record);
+    }
+
+    private void put(Record record) {
+        records.add(record);
+        index.put(record.getIndex()+","+record.getLrIndex()+","+record.getEpochs(), record);
+    }
+
+    private void write(String line) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        long pos = channel.size();
+        while(buf.hasRemaining()) pos += channel.write(buf, pos);
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,23 @@
+package ru.mralexeimk.cnn.other;
+
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.Matrix3D;
+
+/**
+ * Samples (input, target) of dataset. Samples may be read lazily on every iteration,
+ * so dataset doesn't have to fit in memory
+ */
+public interface Dataset extends Iterable<Pair<Matrix3D, Matrix>> {
+    /**
+     * @return Iterator of samples, it must be closed if it isn't read to the end
+     */
+    @Override
+    DatasetIterator iterator();
+
+    /**
+     * @return Count of samples or -1 if it's unknown before iteration
+     */
+    default int getLen() {
+        return -1;
+    }
+}
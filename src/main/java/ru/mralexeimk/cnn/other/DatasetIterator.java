@@ -0,0 +1,16 @@
+package ru.mralexeimk.cnn.other;
+
+import ru.mralexeimk.cnn.models.Matrix;
+import ru.mralexeimk.cnn.models.Matrix3D;
+
+import java.util.Iterator;
+
+/**
+ * Iterator of Dataset. Iterator that isn't read to the end must be closed, so it releases
+ * its resources (e.g. reader of csv file)
+ */
+public interface DatasetIterator extends Iterator<Pair<Matrix3D, Matrix>>, AutoCloseable {
+    @Override
+    default void close() {
+    }
+}
@@ -7,9 +7,10 @@ import ru.mralexeimk.cnn.models.Matrix3D;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 @Data
-public class ExtractedData {
+public class ExtractedData implements Dataset {
     private List<Matrix3D> inputs;
     private List<Matrix> outputs;
 
@@ -18,7 +19,28 @@ public class ExtractedData {
         outputs = new ArrayList<>();
     }
 
+    @Override
     public int getLen() {
         return inputs.size();
     }
+
+    @Override
+    public DatasetIterator iterator() {
+        return new DatasetIterator() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < getLen();
+            }
+
+            @Override
+            public Pair<Matrix3D, Matrix> next() {
+                if(!hasNext()) throw new NoSuchElementException();
+                Pair<Matrix3D, Matrix> res = new Pair<>(inputs.get(index), outputs.get(index));
+                ++index;
+                return res;
+            }
+        };
+    }
 }
@@ -8,6 +8,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+/**
+ * Results of trials of NeuralNetworkGenerator. Methods are synchronized, so trials may add results concurrently
+ */
 @Data
 public class NeuralNetworkParameters implements Serializable {
     private List<Parameters> parametersList;
@@ -16,10 +19,21 @@ public class NeuralNetworkParameters implements Serializable {
         parametersList = new ArrayList<>();
     }
 
-    public void add(int index, double lr, int epochs, double res) {
+    public synchronized void add(int index, double lr, int epochs, double res) {
         parametersList.add(new Parameters(index, lr, epochs, res));
     }
 
+    /**
+     * @return Copy of results added so far
+     */
+    public synchronized List<Parameters> getParametersList() {
+        return new ArrayList<>(parametersList);
+    }
+
+    public synchronized void setParametersList(List<Parameters> parametersList) {
+        this.parametersList = new ArrayList<>(parametersList);
+    }
+
     @Data
     @AllArgsConstructor
     public static class Parameters implements Serializable {
@@ -33,7 +47,7 @@ public class NeuralNetworkParameters implements Serializable {
         }
     }
 
-    public List<Parameters> getTop(int top) {
+    public synchronized List<Parameters> getTop(int top) {
         parametersList.sort((p1, p2) -> Double.compare(p2.getRes(), p1.getRes()));
         return parametersList.stream().limit(top).collect(Collectors.toList());
     }
@@ -0,0 +1,72 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.other.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ByteDatasetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCacheFromFile() throws IOException {
+        File cache = new File(folder.getRoot(), "mnist/test_10.bin");
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        ByteDataset dataset = DataExtractor.cacheFromFile("/test/mnist_test_10.csv", cache, 28, 28, 1, 10);
+        assertEquals(10, dataset.getLen());
+        assertEquals(28 + 10*(1 + 28*28), Files.size(cache.toPath()));
+        int i = 0;
+        for(Pair<Matrix3D, Matrix> sample : dataset) {
+            assertArrayEquals(data.getInputs().get(i).getBuffer(), sample.getFirst().getBuffer(), 1e-15);
+            assertEquals(data.getOutputs().get(i), sample.getSecond());
+            assertEquals(data.getOutputs().get(i).getMaxIndex(), dataset.getLabel(i));
+            ++i;
+        }
+        assertEquals(10, i);
+
+        long modified = cache.lastModified();
+        ByteDataset cached = DataExtractor.cacheFromFile("/test/missing.csv", cache, 28, 28, 1, 10);
+        assertEquals(modified, cache.lastModified());
+        Matrix3D input = new Matrix3D(28, 28, 1);
+        assertSame(input, cached.fillInput(3, input));
+        assertArrayEquals(data.getInputs().get(3).getBuffer(), input.getBuffer(), 1e-15);
+    }
+
+    @Test
+    public void testIncorrectCsv() throws IOException {
+        File csv = folder.newFile("data.csv");
+        Files.write(csv.toPath(), List.of("1,0,255,3,4", "2,0,256,0,0"));
+        File cache = new File(folder.getRoot(), "cache/data.bin");
+        try {
+            DataExtractor.cacheFromFile(csv.getPath(), cache, 2, 2, 1, 3);
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().startsWith("Incorrect line 2 of"));
+        }
+        assertFalse(cache.exists());
+        assertArrayEquals(new String[0], cache.getParentFile().list());
+
+        Files.write(csv.toPath(), List.of("1,0,255,3,4", "2,0,255,0,0"));
+        ByteDataset dataset = DataExtractor.cacheFromFile(csv.getPath(), cache, 2, 2, 1, 3);
+        assertEquals(2, dataset.getLen());
+        assertEquals(2, dataset.getLabel(1));
+        assertArrayEquals(new String[]{"data.bin"}, cache.getParentFile().list());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWrongFile() throws IOException {
+        File file = folder.newFile("wrong.bin");
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        ByteDataset.open(file);
+    }
+}
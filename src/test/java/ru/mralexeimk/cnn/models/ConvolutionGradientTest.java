@@ -0,0 +1,58 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConvolutionGradientTest {
+    @Test
+    public void testKernelGradient() {
+        Matrix I = new Matrix(9, 7, -1, 1);
+        Matrix3D O = new Matrix3D(6, 5, 4), errors = new Matrix3D(6, 5, 4);
+        for(int k = 0; k < O.getBuffer().length; ++k) {
+            O.getBuffer()[k] = Math.random();
+            errors.getBuffer()[k] = Math.random() - 0.5;
+        }
+        Matrix3D dif = new Matrix3D(4, 3, 4);
+        dif.getBuffer()[0] = 1;
+        ConvolutionGradient.addKernelGradient(I, O, errors, 1, 2, dif, new Layer.Workspace());
+        Matrix3D expected = new Matrix3D(4, 3, 4);
+        expected.getBuffer()[0] = 1;
+        for(int z = 1; z < 3; ++z) {
+            for(int y = 0; y < O.getM(); ++y) {
+                for(int x = 0; x < O.getN(); ++x) {
+                    double o = O.get(x, y, z);
+                    expected.get(z).sum(I.getSubMatrix(x, y, 4, 3).multiply(errors.get(x, y, z)*o*(1-o)));
+                }
+            }
+        }
+        assertArrayEquals(expected.getBuffer(), dif.getBuffer(), 1e-12);
+    }
+
+    @Test
+    public void testInputGradient() {
+        Layer.Workspace workspace = new Layer.Workspace();
+        for(int div : new int[]{1, 2, 3}) {
+            Matrix3D E = new Matrix3D(6, 5, 4), K = new Matrix3D(4, 3, 4);
+            for(int k = 0; k < E.getBuffer().length; ++k) E.getBuffer()[k] = Math.random() - 0.5;
+            for(int k = 0; k < K.getBuffer().length; ++k) K.getBuffer()[k] = Math.random() - 0.5;
+            int d = (4 + div - 1)/div;
+            Matrix3D res = new Matrix3D(9, 7, d), expected = new Matrix3D(9, 7, d);
+            res.getBuffer()[0] = expected.getBuffer()[0] = 0.5;
+            for(int z = 0; z < 4; ++z) {
+                for(int y = 0; y < E.getM(); ++y) {
+                    for(int x = 0; x < E.getN(); ++x) {
+                        for(int ky = 0; ky < 3; ++ky) {
+                            for(int kx = 0; kx < 4; ++kx) {
+                                expected.set(x+kx, y+ky, z/div,
+                                        expected.get(x+kx, y+ky, z/div) + E.get(x, y, z)*K.get(kx, ky, z));
+                            }
+                        }
+                    }
+                }
+            }
+            assertSame(res, ConvolutionGradient.addInputGradient(E, K, div, res, workspace));
+            assertArrayEquals(expected.getBuffer(), res.getBuffer(), 1e-12);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Test;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PaddingFill;
+import ru.mralexeimk.cnn.enums.PullingType;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConvolutionTest {
+    @Test
+    public void testMergeKernelOperation() {
+        Matrix3D A = new Matrix3D(new Matrix(6, 6, 0, 1), new Matrix(6, 6, 0, 1), new Matrix(6, 6, 0, 1));
+        Matrix3D K = new Matrix3D(new Matrix(3, 3, -1, 1), new Matrix(3, 3, -1, 1));
+        for(PaddingFill paddingFill : PaddingFill.values()) {
+            Matrix3D res = A.getConvertByMergeKernel(K, 1, paddingFill, 1);
+            assertEquals("(6;6;2)", res.getShapes());
+            for(int i = 0; i < K.getD(); ++i) {
+                Matrix expected = new Matrix(6, 6);
+                for(int j = 0; j < A.getD(); ++j) {
+                    expected.sum(MatrixExtractor.getConvertByKernel(A.get(j), K.get(i), 1, paddingFill));
+                }
+                assertEquals(expected, res.get(i));
+            }
+        }
+
+        Matrix3D res = A.getConvertByMergeKernel(K, 0, PaddingFill.BY_ZEROES, 2);
+        assertEquals(MatrixExtractor.getConvertByKernel(A.get(0), K.get(0), 0, PaddingFill.BY_ZEROES, 2)
+                .sum(MatrixExtractor.getConvertByKernel(A.get(2), K.get(0), 0, PaddingFill.BY_ZEROES, 2)), res.get(0));
+        assertEquals(new Matrix(2, 2), res.get(1));
+    }
+
+    @Test
+    public void testKernelOperation() {
+        Matrix3D A = new Matrix3D(new Matrix(5, 5, 0, 1), new Matrix(5, 5, 0, 1));
+        Matrix3D K = new Matrix3D(new Matrix(2, 2, -1, 1), new Matrix(2, 2, -1, 1),
+                new Matrix(2, 2, -1, 1), new Matrix(2, 2, -1, 1));
+        Matrix3D res = A.getConvertByKernel(K, 1, PaddingFill.BY_MEDIAN, 2);
+        assertEquals("(3;3;4)", res.getShapes());
+        for(int i = 0; i < K.getD(); ++i) {
+            assertEquals(MatrixExtractor.getConvertByKernel(A.get(i/2), K.get(i), 1, PaddingFill.BY_MEDIAN, 2), res.get(i));
+        }
+    }
+
+    @Test
+    public void testKernelPullingOperation() {
+        // (68,8) convolution: bands of one row of result, the last column is not pulled
+        Matrix A = new Matrix(70, 9, 0, 1);
+        Matrix3D K = new Matrix3D(new Matrix(3, 2, -1, 1), new Matrix(3, 2, -1, 1), new Matrix(3, 2, -1, 1));
+        List<Double> biases = List.of(0.1, -0.2, 0.3);
+        for(ActivationFunType activationFunType : List.of(ActivationFunType.TANH, ActivationFunType.SIGMOID)) {
+            for(PullingType pullingType : PullingType.values()) {
+                Matrix3D res = Convolution.convertByKernelPulling(A, K, 1, 2, biases, activationFunType, pullingType, 2,
+                        new double[Convolution.getColsSize(70, 9, 3, 2, 0, 1)],
+                        new double[Convolution.getTileSize(68, 8, 2, 2)], new Matrix3D(34, 4, 3));
+                assertEquals(new Matrix(34, 4), res.get(0));
+                for(int i = 1; i < K.getD(); ++i) {
+                    Matrix conv = MatrixExtractor.getConvertByKernel(A, K.get(i), 0, PaddingFill.BY_ZEROES).sum(biases.get(i));
+                    for(int y = 0; y < conv.getM(); ++y) {
+                        for(int x = 0; x < conv.getN(); ++x) {
+                            conv.set(x, y, activationFunType.getActivationFunInterface().activationFun(conv.get(x, y)));
+                        }
+                    }
+                    Matrix expected = conv.getConvertByPulling(pullingType, 2, new Matrix(34, 4));
+                    for(int y = 0; y < 4; ++y) {
+                        for(int x = 0; x < 34; ++x) assertEquals(expected.get(x, y), res.get(i).get(x, y), 1e-12);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.other.Dataset;
+import ru.mralexeimk.cnn.other.DatasetIterator;
+import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.other.Pair;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DataExtractorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStreamFromFile() {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        assertEquals(10, data.getLen());
+        Dataset stream = DataExtractor.streamFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        assertEquals(-1, stream.getLen());
+        for(int epoch = 0; epoch < 2; ++epoch) {
+            int i = 0;
+            for(Pair<Matrix3D, Matrix> sample : stream) {
+                assertArrayEquals(data.getInputs().get(i).getBuffer(), sample.getFirst().getBuffer(), 0);
+                assertEquals(data.getOutputs().get(i), sample.getSecond());
+                ++i;
+            }
+            assertEquals(10, i);
+        }
+        assertEquals(7, data.getOutputs().get(0).getMaxIndex());
+        assertEquals(0.01, data.getInputs().get(0).get(0, 0, 0), 1e-12);
+    }
+
+    @Test
+    public void testIncorrectLine() throws Exception {
+        File file = folder.newFile("data.csv");
+        Files.write(file.toPath(), List.of("1,0,255,0,0", "", "2,0,x,0,0"));
+        Dataset stream = DataExtractor.streamFromFile(file.getPath(), 2, 2, 1, 3);
+        Pair<Matrix3D, Matrix> sample = stream.iterator().next();
+        assertEquals(1, sample.getSecond().getMaxIndex());
+        assertEquals(1.0, sample.getFirst().get(1, 0, 0), 1e-12);
+        try {
+            DataExtractor.extractFromFile(file.getPath(), 2, 2, 1, 3);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Incorrect line 3 of"));
+        }
+    }
+
+    @Test
+    public void testCloseIterator() throws Exception {
+        File file = folder.newFile("data.csv");
+        Files.write(file.toPath(), List.of("1,0,255,0,0", "2,0,x,0,0", "0,1,2,3,4"));
+        Dataset stream = DataExtractor.streamFromFile(file.getPath(), 2, 2, 1, 3);
+        try(DatasetIterator it = stream.iterator()) {
+            it.next();
+            it.close();
+            assertFalse(it.hasNext());
+        }
+        DatasetIterator it = stream.iterator();
+        it.next();
+        try {
+            it.next();
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Incorrect line 2 of"));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testMissingFile() {
+        DataExtractor.extractFromFile("/test/missing.csv", 28, 28, 1, 10);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Test;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DenseTest {
+    /**
+     * @return act(W*x + bias) by separate steps
+     */
+    private Matrix getExpected(Matrix W, Matrix x, double bias, ActivationFunType activationFunType) {
+        Matrix res = MatrixExtractor.getMultiply(W, x).sum(bias);
+        double sum = 0;
+        for(int y = 0; y < res.getM(); ++y) sum += Math.exp(res.get(0, y));
+        for(int y = 0; y < res.getM(); ++y) {
+            double val = activationFunType.getActivationFunInterface().activationFun(res.get(0, y));
+            res.set(0, y, activationFunType == ActivationFunType.SOFT_MAX ? val/sum : val);
+        }
+        return res;
+    }
+
+    @Test
+    public void testForward() {
+        // 150 units - three blocks
+        Matrix W = new Matrix(40, 150, -1, 1);
+        Matrix x = new Matrix(1, 40, 0, 1);
+        for(ActivationFunType activationFunType : ActivationFunType.values()) {
+            Matrix expected = getExpected(W, x, 0.3, activationFunType);
+            double[] out = new double[152];
+            Dense.forward(W, x.getBuffer(), 0, 0.3, activationFunType, out, 2);
+            for(int y = 0; y < 150; ++y) assertEquals(expected.get(0, y), out[2 + y], 1e-12);
+        }
+    }
+
+    @Test
+    public void testForwardBatch() {
+        Matrix W = new Matrix(30, 20, -1, 1);
+        Matrix X = new Matrix(30, 3, 0, 1);
+        for(ActivationFunType activationFunType : ActivationFunType.values()) {
+            List<Matrix3D> res = Dense.forwardBatch(X, W, -0.2, activationFunType);
+            assertEquals(3, res.size());
+            for(int b = 0; b < 3; ++b) {
+                assertEquals("(1;20;1)", res.get(b).getShapes());
+                Matrix expected = getExpected(W, X.getSubMatrix(0, b, 30, 1).getTransposed(), -0.2, activationFunType);
+                for(int y = 0; y < 20; ++y) assertEquals(expected.get(0, y), res.get(b).get(0, y, 0), 1e-12);
+            }
+        }
+    }
+}
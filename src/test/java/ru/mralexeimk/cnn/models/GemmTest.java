@@ -0,0 +1,79 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GemmTest {
+    private static Matrix naiveMultiply(Matrix A, Matrix B) {
+        Matrix res = new Matrix(B.getN(), A.getM());
+        for(int y = 0; y < A.getM(); ++y) {
+            for(int x = 0; x < B.getN(); ++x) {
+                double val = 0;
+                for(int i = 0; i < A.getN(); ++i) {
+                    val += A.get(i, y)*B.get(x, i);
+                }
+                res.set(x, y, val);
+            }
+        }
+        return res;
+    }
+
+    @Test
+    public void testMultiplyOperation() {
+        int[][] shapes = {{1, 1, 1}, {3, 5, 7}, {4, 4, 4}, {9, 130, 6}, {70, 300, 260}, {512, 784, 1}, {1, 10, 256}};
+        for(int[] shape : shapes) {
+            Matrix A = new Matrix(shape[1], shape[0], -1, 1);
+            Matrix B = new Matrix(shape[2], shape[1], -1, 1);
+            assertEquals(naiveMultiply(A, B), Gemm.multiply(A, B));
+        }
+    }
+
+    @Test
+    public void testMultiplyAccumulateOperation() {
+        Matrix A = new Matrix("1,2|3,4");
+        Matrix B = new Matrix("5,6|7,8");
+        Matrix C = new Matrix(2, 2, 1);
+        Gemm.multiply(A, B, C, true);
+        assertEquals(new Matrix("20,23|44,51"), C);
+        Gemm.multiply(A, B, C, false);
+        assertEquals(new Matrix("19,22|43,50"), C);
+    }
+
+    @Test
+    public void testMultiplySubMatrixViewOperation() {
+        Matrix A = new Matrix("0,0,0|0,1,2|0,3,4");
+        Matrix B = new Matrix("5,6,0|7,8,0");
+        assertEquals(new Matrix("19,22|43,50"),
+                Gemm.multiply(A.getSubMatrixView(1, 1, 2, 2), B.getSubMatrixView(0, 0, 2, 2)));
+    }
+
+    @Test
+    public void testMultiplyTransposedOperation() {
+        int[][] shapes = {{1, 1, 1}, {3, 5, 7}, {9, 130, 6}, {70, 300, 260}, {512, 784, 1}, {1, 10, 256}, {256, 16, 784}};
+        for(int[] shape : shapes) {
+            Matrix A = new Matrix(shape[1], shape[0], -1, 1);
+            Matrix B = new Matrix(shape[2], shape[1], -1, 1);
+            Matrix expected = naiveMultiply(A, B);
+            Matrix At = A.getTransposed(), Bt = B.getTransposed();
+            assertEquals(expected, MatrixExtractor.getMultiply(At, true, B, false));
+            assertEquals(expected, MatrixExtractor.getMultiply(A, false, Bt, true));
+            assertEquals(expected, MatrixExtractor.getMultiply(At, true, Bt, true));
+            assertEquals(expected, MatrixExtractor.getMultiply(A, false, B, false));
+        }
+        Matrix C = new Matrix(2, 2, 1);
+        Gemm.multiply(new Matrix("0,0,0|0,1,3|0,2,4").getSubMatrixView(1, 1, 2, 2), true,
+                new Matrix("5,7|6,8"), true, C, true);
+        assertEquals(new Matrix("20,23|44,51"), C);
+    }
+
+    @Test
+    public void testAddOuterOperation() {
+        Matrix x = new Matrix("1|2|3"), y = new Matrix("1,0,-1,2");
+        Matrix A = new Matrix(4, 3, 1);
+        A.addOuter(2, x, y);
+        assertEquals(new Matrix("3,1,-1,5|5,1,-3,9|7,1,-5,13"), A);
+        A.addOuter(-2, new Matrix("1,2,3"), new Matrix("0,0,1,2|1,0,-1,2").getSubMatrixView(0, 1, 4, 1));
+        assertEquals(new Matrix(4, 3, 1), A);
+    }
+}
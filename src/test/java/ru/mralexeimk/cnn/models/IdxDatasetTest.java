@@ -0,0 +1,74 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.other.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class IdxDatasetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeIdx(String name, int[] dims, byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4 + 4*dims.length + data.length);
+        buf.put((byte) 0).put((byte) 0).put((byte) 0x08).put((byte) dims.length);
+        for(int dim : dims) buf.putInt(dim);
+        buf.put(data);
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), buf.array());
+        return file;
+    }
+
+    @Test
+    public void testOpen() throws IOException {
+        byte[] pixels = new byte[3*2*3];
+        for(int i = 0; i < pixels.length; ++i) pixels[i] = (byte) (i*15);
+        File images = writeIdx("images-idx3-ubyte", new int[]{3, 2, 3}, pixels);
+        File labels = writeIdx("labels-idx1-ubyte", new int[]{3}, new byte[]{4, 0, 9});
+        IdxDataset data = IdxDataset.open(images, labels, 10);
+        assertEquals(3, data.getLen());
+        assertEquals(3, data.getInputX());
+        assertEquals(2, data.getInputY());
+        assertEquals(1, data.getInputZ());
+        assertEquals(9, data.getLabel(2));
+
+        ByteBuffer raw = data.getPixels(1);
+        assertEquals(6, raw.remaining());
+        assertEquals(6*15, raw.get(0) & 0xFF);
+
+        Matrix3D input = data.fillInput(1, new Matrix3D(3, 2, 1));
+        for(int y = 0; y < 2; ++y) {
+            for(int x = 0; x < 3; ++x) {
+                double t = (6 + y*3 + x)*15;
+                assertEquals((t/255)*0.99 + 0.01, input.get(x, y, 0), 1e-12);
+            }
+        }
+        int n = 0;
+        for(Pair<Matrix3D, Matrix> sample : data) {
+            assertEquals(data.getLabel(n), sample.getSecond().getMaxIndex());
+            assertArrayEquals(data.fillInput(n, new Matrix3D(3, 2, 1)).getBuffer(), sample.getFirst().getBuffer(), 0);
+            ++n;
+        }
+        assertEquals(3, n);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongMagic() throws IOException {
+        File images = folder.newFile("images");
+        Files.write(images.toPath(), new byte[]{0, 0, 0x0D, 1, 0, 0, 0, 0});
+        IdxDataset.open(images, writeIdx("labels", new int[]{0}, new byte[0]), 10);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCountMismatch() throws IOException {
+        File images = writeIdx("images", new int[]{2, 1, 1}, new byte[]{1, 2});
+        IdxDataset.open(images, writeIdx("labels", new int[]{1}, new byte[]{0}), 10);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.mralexeimk.cnn.models;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.layers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class JfrEventsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<RecordedEvent> getEvents(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals("ru.mralexeimk.cnn."+name))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        NeuralNetwork nn = new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(12, 12, 1, ActivationFunType.SIGMOID),
+                new FilterLayer(10, 10, 4),
+                new PullingLayer(5, 5, 4, PullingType.AVERAGE, ActivationFunType.SIGMOID),
+                new NeuronsLayer(100, ActivationFunType.SIGMOID),
+                new OutputLayer(3)
+        )), 0.05);
+        File model = folder.newFile("test.w");
+        File dump = new File(folder.getRoot(), "events.jfr");
+        try(Recording recording = new Recording()) {
+            for(String name : List.of("LayerForward", "LayerBackward", "ModelIO", "DatasetLoad")) {
+                recording.enable("ru.mralexeimk.cnn."+name).withThreshold(java.time.Duration.ZERO);
+            }
+            recording.start();
+            nn.train(new Matrix3D(new Matrix(12, 12, 0, 1)), new Matrix(1, 3, 0, 1));
+            ModelFormat.write(nn, model);
+            DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+
+        List<RecordedEvent> forward = getEvents(events, "LayerForward");
+        assertEquals(5, forward.size());
+        assertEquals("FILTER", forward.get(1).getString("layerType"));
+        assertEquals("(10;10;4)", forward.get(1).getString("inputShapes"));
+        assertEquals(8L*(10*10*4 + 5*5*4), forward.get(1).getLong("bytes"));
+
+        List<RecordedEvent> backward = getEvents(events, "LayerBackward");
+        assertEquals(4, backward.size());
+        RecordedEvent neurons = backward.stream().filter(e -> e.getString("layerType").equals("NEURONS"))
+                .findFirst().orElseThrow();
+        assertEquals("OUTPUT", neurons.getString("nextLayerType"));
+        assertEquals(8L*100*3, neurons.getLong("weightBytes"));
+
+        List<RecordedEvent> io = getEvents(events, "ModelIO");
+        assertEquals(1, io.size());
+        assertEquals("write", io.get(0).getString("operation"));
+        assertEquals(model.length(), io.get(0).getLong("bytes"));
+        assertTrue(io.get(0).getBoolean("success"));
+
+        List<RecordedEvent> load = getEvents(events, "DatasetLoad");
+        assertEquals(1, load.size());
+        assertEquals(10, load.get(0).getInt("samples"));
+        assertTrue(load.get(0).getLong("bytes") > 0);
+    }
+}
@@ -1,6 +1,9 @@
 package ru.mralexeimk.cnn.models;
 
 import org.junit.Test;
+import ru.mralexeimk.cnn.enums.PullingType;
+
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -89,4 +92,43 @@ public class MatrixTest {
         A.joinBottom(new Matrix("1,2,3"));
         assertEquals(new Matrix("1,2,3|4,5,6|7,8,9|1,2,3"), A);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPullingWinners() {
+        Matrix3D A = new Matrix3D(new Matrix("1,5,2,0|3,4,8,6"), new Matrix("9,2,7,7|1,3,2,4"));
+        int[] winners = new int[4];
+        Matrix3D max = A.getConvertByPulling(PullingType.MAX, 2, new Matrix3D(2, 1, 2), winners);
+        assertEquals(new Matrix("5,8"), max.get(0));
+        assertEquals(new Matrix("9,7"), max.get(1));
+        assertArrayEquals(new int[]{1, 6, 8, 10}, winners);
+
+        Matrix3D min = A.getConvertByPulling(PullingType.MIN, 2, new Matrix3D(2, 1, 2), winners);
+        assertEquals(new Matrix("1,0"), min.get(0));
+        assertArrayEquals(new int[]{0, 3, 12, 14}, winners);
+
+        Matrix3D errors = new Matrix3D(new Matrix("1,2"), new Matrix("3,4"));
+        Matrix3D res = errors.scatter(winners, new Matrix3D(4, 2, 2));
+        assertEquals(new Matrix("1,0,0,2|0,0,0,0"), res.get(0));
+        assertEquals(new Matrix("0,0,0,0|3,0,4,0"), res.get(1));
+    }
+
+    @Test
+    public void testViewMutation() {
+        Matrix3D A = new Matrix3D(new Matrix("1,2|3,4"), new Matrix("5,6|7,8"));
+        A.get(0).transpose();
+        A.get(1).multiply(new Matrix("0,1|1,0"));
+        assertEquals(new Matrix("1,3|2,4"), A.get(0));
+        assertArrayEquals(new double[]{1, 3, 2, 4, 6, 5, 8, 7}, A.getBuffer(), 0);
+        assertEquals(List.of(1.0, 3.0, 2.0, 4.0, 6.0, 5.0, 8.0, 7.0), A.getConvertToLine().getMatrix().toList());
+        try {
+            A.get(0).increase(2, 2);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Can't reshape view"));
+        }
+        A.increase(2, 1);
+        assertEquals(new Matrix("1,1,3,3|2,2,4,4"), A.get(0));
+        assertEquals(4, A.getN());
+        assertSame(A.getBuffer(), A.get(1).getBuffer());
+    }
+}
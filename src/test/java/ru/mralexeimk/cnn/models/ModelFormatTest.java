@@ -0,0 +1,105 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.layers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ModelFormatTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteRead() throws IOException {
+        NeuralNetwork nn = new NeuralNetwork("conv", new ArrayList<>(List.of(
+                new InputLayer(12, 12, 2, ActivationFunType.SIGMOID),
+                new FilterLayer(10, 10, 4),
+                new PullingLayer(5, 5, 4, PullingType.MAX, ActivationFunType.SIGMOID),
+                new FilterLayer(4, 4, 8),
+                new PullingLayer(2, 2, 8, PullingType.MIN),
+                new NeuronsLayer(32, ActivationFunType.TANH),
+                new OutputLayer(4)
+        )), 0.03);
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        nn.train(input, new Matrix(1, 4, 0, 1));
+        File file = folder.newFile("conv.w");
+        ModelFormat.write(nn, file);
+
+        NeuralNetwork loaded = new NeuralNetwork("other", new ArrayList<>(List.of(
+                new InputLayer(2, 2, 1), new NeuronsLayer(2), new OutputLayer(2))), 0.1);
+        ModelFormat.read(file, loaded);
+        assertEquals("conv", loaded.getId());
+        assertEquals(0.03, loaded.getLearningRate(), 0);
+        assertEquals(nn.getConfiguration(), loaded.getConfiguration());
+        for(int i = 0; i < nn.getLayers().size(); ++i) {
+            Layer layer = nn.getLayers().get(i), other = loaded.getLayers().get(i);
+            assertEquals(layer.getActivationFunType(), other.getActivationFunType());
+            assertEquals(layer.getBiases(), other.getBiases());
+            if(layer.getW() != null) assertArrayEquals(layer.getW().getBuffer(), other.getW().getBuffer(), 0);
+        }
+        assertEquals(PullingType.MIN, ((PullingLayer) loaded.getLayers().get(4)).getPullingType());
+        assertEquals(nn.query(input), loaded.query(input));
+    }
+
+    @Test
+    public void testRewrite() throws IOException {
+        NeuralNetwork nn = new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(2, 2, 1), new NeuronsLayer(2), new OutputLayer(2))), 0.1);
+        File file = new File(folder.getRoot(), "weights/test.w");
+        ModelFormat.write(nn, file);
+        nn.setLearningRate(0.2);
+        ModelFormat.write(nn, file);
+        assertArrayEquals(new String[]{"test.w"}, file.getParentFile().list());
+        ModelFormat.read(file, nn);
+        assertEquals(0.2, nn.getLearningRate(), 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadWrongFile() throws IOException {
+        File file = folder.newFile("wrong.w");
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        ModelFormat.read(file, new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(2, 2, 1), new NeuronsLayer(2), new OutputLayer(2))), 0.1));
+    }
+
+    @Test
+    public void testReadCorruptFile() throws IOException {
+        NeuralNetwork nn = new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(2, 2, 1), new NeuronsLayer(2), new OutputLayer(2))), 0.1);
+        File file = folder.newFile("test.w");
+        ModelFormat.write(nn, file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // header: magic, version, learning rate, id length, id "test", count of layers, then layer type
+        int[] positions = {16, 24, 28, 41, 42};
+        byte[] values = {-7, 100, 9, 100, 3};
+        for(int k = 0; k < positions.length; ++k) {
+            byte[] corrupt = bytes.clone();
+            corrupt[positions[k]] = values[k];
+            Files.write(file.toPath(), corrupt);
+            try {
+                ModelFormat.read(file, nn);
+                fail("Corrupt byte "+positions[k]);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Incorrect") || e.getMessage().startsWith("Truncated"));
+            }
+        }
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        try {
+            ModelFormat.read(file, nn);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Truncated"));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.layers.*;
+import ru.mralexeimk.cnn.other.ExtractedData;
+import ru.mralexeimk.cnn.other.NeuralNetworkParameters;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NeuralNetworkGeneratorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCopyLayers() {
+        List<Layer> layers = new ArrayList<>(List.of(
+                new InputLayer(12, 12, 1, ActivationFunType.SIGMOID),
+                new FilterLayer(10, 10, 2),
+                new PullingLayer(5, 5, 2, PullingType.MAX, ActivationFunType.TANH),
+                new NeuronsLayer(50, ActivationFunType.SIGMOID),
+                new OutputLayer(3)));
+        List<Layer> copy = Layer.copyLayers(layers);
+        new NeuralNetwork("test", copy, 0.1);
+        for(int i = 0; i < layers.size(); ++i) {
+            assertNotSame(layers.get(i), copy.get(i));
+            assertEquals(layers.get(i).toString(), copy.get(i).toString());
+            assertEquals(layers.get(i).getActivationFunType(), copy.get(i).getActivationFunType());
+            assertNull(layers.get(i).getW());
+        }
+        assertEquals(PullingType.MAX, ((PullingLayer) copy.get(2)).getPullingType());
+    }
+
+    @Test
+    public void testParallelSearch() throws Exception {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        List<List<Layer>> layers = List.of(
+                new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                        new NeuronsLayer(16, ActivationFunType.SIGMOID), new OutputLayer(10))),
+                new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                        new NeuronsLayer(8, ActivationFunType.SIGMOID), new OutputLayer(10))));
+        File journal = new File(folder.getRoot(), "trials.journal");
+        NeuralNetworkParameters parameters = NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers,
+                0.01, 0.1, 2, 2, 3, 3, journal);
+        assertEquals(2*2*2, parameters.getParametersList().size());
+        assertEquals(1 + 2*2*2, Files.readAllLines(journal.toPath()).size());
+        for(NeuralNetworkParameters.Parameters p : parameters.getParametersList()) {
+            assertTrue(p.getEpochs() == 2 || p.getEpochs() == 3);
+        }
+        List<NeuralNetworkParameters.Parameters> top = parameters.getTop(3);
+        assertEquals(3, top.size());
+        assertTrue(top.get(0).getRes() >= top.get(2).getRes());
+        for(List<Layer> architecture : layers) {
+            for(Layer layer : architecture) assertNull(layer.getW());
+        }
+    }
+
+    @Test
+    public void testSuccessiveHalving() {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        List<List<Layer>> layers = new ArrayList<>();
+        for(int units = 4; units <= 10; units += 2) {
+            layers.add(new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                    new NeuronsLayer(units, ActivationFunType.SIGMOID), new OutputLayer(10))));
+        }
+        NeuralNetworkParameters parameters = NeuralNetworkGenerator.genBySuccessiveHalving(data, data, layers,
+                0.01, 0.1, 2, 1, 6, 3, 2, new File(folder.getRoot(), "trials.journal"));
+        // 8 trials of 1 epoch, 3 of 3 epochs, 1 of 6 epochs
+        int[] counts = new int[7];
+        for(NeuralNetworkParameters.Parameters p : parameters.getParametersList()) ++counts[p.getEpochs()];
+        assertArrayEquals(new int[]{0, 8, 0, 3, 0, 0, 1}, counts);
+        assertEquals(12, parameters.getParametersList().size());
+        assertEquals(12, parameters.getTop(20).size());
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        List<List<Layer>> layers = List.of(new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                new NeuronsLayer(8, ActivationFunType.SIGMOID), new OutputLayer(10))));
+        File journal = new File(folder.getRoot(), "trials.journal");
+        NeuralNetworkParameters parameters = NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers,
+                0.01, 0.1, 3, 1, 2, 2, journal);
+        List<String> lines = Files.readAllLines(journal.toPath());
+        assertEquals(1 + 3*2, lines.size());
+        // Crash after the first two tests, the last line is torn
+        Files.writeString(journal.toPath(), String.join("\n", lines.subList(0, 3)) + "\n" + lines.get(3).substring(0, 5));
+        NeuralNetworkParameters resumed = NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers,
+                0.01, 0.1, 3, 1, 2, 2, journal);
+        assertEquals(6, resumed.getParametersList().size());
+        List<String> resumedLines = Files.readAllLines(journal.toPath());
+        assertEquals(lines.subList(0, 3), resumedLines.subList(0, 3));
+        assertEquals(1 + 3*2, resumedLines.size());
+        for(NeuralNetworkParameters.Parameters p : parameters.getParametersList()) {
+            assertTrue(resumed.getParametersList().stream().anyMatch(r ->
+                    r.getLearningRate() == p.getLearningRate() && r.getEpochs() == p.getEpochs()));
+        }
+        NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers, 0.01, 0.1, 3, 1, 2, 2, journal);
+        assertEquals(resumedLines, Files.readAllLines(journal.toPath()));
+    }
+
+    @Test
+    public void testJournalOfOtherSearch() {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        ExtractedData other = new ExtractedData();
+        other.getInputs().addAll(data.getInputs().subList(0, 5));
+        other.getOutputs().addAll(data.getOutputs().subList(0, 5));
+        List<List<Layer>> layers = List.of(new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                new NeuronsLayer(8, ActivationFunType.SIGMOID), new OutputLayer(10))));
+        File journal = new File(folder.getRoot(), "trials.journal");
+        NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers, 0.01, 0.1, 1, 1, 1, 1, journal);
+        try {
+            NeuralNetworkGenerator.genTheBestNeuralNetwork(other, data, layers, 0.01, 0.1, 1, 1, 1, 1, journal);
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().contains("belongs to another search"));
+        }
+        try {
+            NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers, 0.01, 0.1, 1, 1, 2, 1, journal);
+            fail();
+        } catch (UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().contains("belongs to another search"));
+        }
+    }
+
+    @Test
+    public void testSearchWithoutJournal() {
+        ExtractedData data = DataExtractor.extractFromFile("/test/mnist_test_10.csv", 28, 28, 1, 10);
+        List<List<Layer>> layers = List.of(new ArrayList<>(List.of(new InputLayer(28, 28, 1, ActivationFunType.SIGMOID),
+                new NeuronsLayer(8, ActivationFunType.SIGMOID), new OutputLayer(10))));
+        boolean existed = new File("trials.journal").exists();
+        for(int i = 0; i < 2; ++i) {
+            NeuralNetworkParameters parameters = NeuralNetworkGenerator.genTheBestNeuralNetwork(data, data, layers,
+                    0.01, 0.1, 2, 1, 1);
+            assertEquals(2, parameters.getParametersList().size());
+        }
+        assertEquals(existed, new File("trials.journal").exists());
+    }
+}
@@ -0,0 +1,255 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Test;
+import ru.mralexeimk.cnn.enums.ActivationFunInterface;
+import ru.mralexeimk.cnn.enums.ActivationFunType;
+import ru.mralexeimk.cnn.enums.PullingType;
+import ru.mralexeimk.cnn.layers.*;
+import ru.mralexeimk.cnn.other.ExtractedData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NeuralNetworkTest {
+    private NeuralNetwork getConvNetwork(PullingType pullingType) {
+        return new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(12, 12, 2, ActivationFunType.SIGMOID),
+                new FilterLayer(10, 10, 4),
+                new PullingLayer(5, 5, 4, pullingType, ActivationFunType.SIGMOID),
+                new FilterLayer(4, 4, 8),
+                new PullingLayer(2, 2, 8, pullingType),
+                new NeuronsLayer(32, ActivationFunType.SIGMOID),
+                new OutputLayer(4)
+        )), 0.05);
+    }
+
+    private NeuralNetwork getDenseNetwork() {
+        return new NeuralNetwork("test", new ArrayList<>(List.of(
+                new InputLayer(6, 6, 1, ActivationFunType.SIGMOID),
+                new NeuronsLayer(8, ActivationFunType.SIGMOID),
+                new NeuronsLayer(5, ActivationFunType.SIGMOID),
+                new OutputLayer(3)
+        )), 0.05);
+    }
+
+    private void copyWeights(NeuralNetwork from, NeuralNetwork to) {
+        for(int i = 0; i < from.getLayers().size(); ++i) {
+            Layer layer = from.getLayers().get(i);
+            if(layer.getW() != null) to.getLayers().get(i).setW(layer.getW().clone());
+        }
+    }
+
+    private void assertClose(Matrix expected, Matrix actual) {
+        assertEquals(expected.getShapes(), actual.getShapes());
+        for(int y = 0; y < expected.getM(); ++y) {
+            for(int x = 0; x < expected.getN(); ++x) {
+                assertEquals(expected.get(x, y), actual.get(x, y), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testAllocationFreeEvaluate() {
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        for(PullingType pullingType : PullingType.values()) {
+            NeuralNetwork nn = getConvNetwork(pullingType);
+            Matrix expected = nn.query(input).clone();
+            nn.setAllocationFree(true);
+            assertClose(expected, nn.query(input));
+            assertClose(expected, nn.query(input));
+        }
+
+        NeuralNetwork nn = getDenseNetwork();
+        Matrix3D line = new Matrix3D(new Matrix(6, 6, 0, 1));
+        Matrix expected = nn.query(line).clone();
+        nn.setAllocationFree(true);
+        assertClose(expected, nn.query(line));
+    }
+
+    @Test
+    public void testAllocationFreeTrain() {
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        NeuralNetwork nn = getConvNetwork(PullingType.AVERAGE);
+        NeuralNetwork copy = getConvNetwork(PullingType.AVERAGE);
+        copyWeights(nn, copy);
+        copy.setAllocationFree(true);
+        Matrix target = new Matrix(1, 4, 0, 1);
+        for(int i = 0; i < 3; ++i) {
+            nn.train(input, target.clone());
+            copy.train(input, target.clone());
+        }
+        assertClose(nn.query(input), copy.query(input));
+    }
+
+    @Test
+    public void testTrainBatch() {
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        Matrix target = new Matrix(1, 4, 0, 1);
+        for(PullingType pullingType : PullingType.values()) {
+            NeuralNetwork nn = getConvNetwork(pullingType);
+            NeuralNetwork batched = getConvNetwork(pullingType);
+            copyWeights(nn, batched);
+            for(int i = 0; i < 2; ++i) {
+                nn.train(input, target);
+                batched.trainBatch(List.of(input, input, input), List.of(target, target, target));
+            }
+            assertClose(nn.query(input), batched.query(input));
+            for(int i = 0; i < nn.getLayers().size(); ++i) {
+                assertEquals(nn.getLayers().get(i).getBiases().size(), batched.getLayers().get(i).getBiases().size());
+                for(int j = 0; j < nn.getLayers().get(i).getBiases().size(); ++j) {
+                    assertEquals(nn.getLayers().get(i).getBias(j), batched.getLayers().get(i).getBias(j), 1e-9);
+                }
+            }
+        }
+
+        NeuralNetwork nn = getDenseNetwork();
+        NeuralNetwork batched = getDenseNetwork();
+        copyWeights(nn, batched);
+        Matrix3D a = new Matrix3D(new Matrix(6, 6, 0, 1)), b = new Matrix3D(new Matrix(6, 6, 0, 1));
+        Matrix3D expected = nn.getLayers().get(2).getW().clone();
+        Matrix out = new Matrix(1, 3, 0, 1);
+        batched.trainBatch(List.of(a, b), List.of(out, out));
+        Matrix gradA = getFirstGradient(a, out, nn), gradB = getFirstGradient(b, out, nn);
+        assertClose(expected.get(0).sum(gradA.sum(gradB).multiply(0.5)), batched.getLayers().get(2).getW().get(0));
+    }
+
+    /**
+     * @return Change of weights of the last Neurons layer after training on one sample
+     */
+    private Matrix getFirstGradient(Matrix3D input, Matrix target, NeuralNetwork nn) {
+        NeuralNetwork copy = getDenseNetwork();
+        copyWeights(nn, copy);
+        Matrix before = copy.getLayers().get(2).getW().get(0).clone();
+        copy.train(input, target);
+        return copy.getLayers().get(2).getW().get(0).diff(before);
+    }
+
+    @Test
+    public void testParallelTrainBatch() {
+        List<Matrix3D> inputs = new ArrayList<>();
+        List<Matrix> targets = new ArrayList<>();
+        for(int i = 0; i < 7; ++i) {
+            inputs.add(new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1)));
+            targets.add(new Matrix(1, 4, 0, 1));
+        }
+        NeuralNetwork nn = getConvNetwork(PullingType.MAX);
+        NeuralNetwork parallel = getConvNetwork(PullingType.MAX);
+        copyWeights(nn, parallel);
+        parallel.setThreads(3);
+        for(int i = 0; i < 2; ++i) {
+            nn.trainBatch(inputs, targets);
+            parallel.trainBatch(inputs, targets);
+        }
+        for(Matrix3D input : inputs) {
+            assertClose(nn.query(input), parallel.query(input));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncorrectBatchSize() {
+        getConvNetwork(PullingType.MAX).setBatchSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncorrectThreads() {
+        getConvNetwork(PullingType.MAX).setThreads(0);
+    }
+
+    @Test
+    public void testInferenceSession() throws Exception {
+        NeuralNetwork nn = getConvNetwork(PullingType.AVERAGE);
+        List<Matrix3D> inputs = new ArrayList<>();
+        List<Matrix> expected = new ArrayList<>();
+        for(int i = 0; i < 16; ++i) {
+            inputs.add(new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1)));
+            expected.add(nn.query(inputs.get(i)).clone());
+        }
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for(int t = 0; t < 4; ++t) {
+            InferenceSession session = nn.createSession();
+            Thread thread = new Thread(() -> {
+                try {
+                    for(int k = 0; k < 50; ++k) {
+                        for(int i = 0; i < inputs.size(); ++i) {
+                            assertClose(expected.get(i), session.query(inputs.get(i)));
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized(failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) thread.join();
+        assertTrue(failures.isEmpty());
+        assertEquals(expected.get(0).getMaxIndex(), nn.createSession().queryMax(inputs.get(0)));
+    }
+
+    @Test
+    public void testFusedSession() {
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        for(PullingType pullingType : PullingType.values()) {
+            NeuralNetwork nn = getConvNetwork(pullingType);
+            assertTrue(nn.getLayers().get(0).isFusedWithPulling());
+            assertTrue(nn.getLayers().get(2).isFusedWithPulling());
+            assertFalse(nn.getLayers().get(4).isFusedWithPulling());
+            InferenceSession session = nn.createSession();
+            assertClose(nn.query(input), session.query(input));
+            assertClose(nn.query(input), session.query(input));
+        }
+    }
+
+    @Test
+    public void testFusedSessionWithReplacedFunction() {
+        Matrix3D input = new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1));
+        ActivationFunInterface sigmoid = ActivationFunType.SIGMOID.getActivationFunInterface();
+        try {
+            ActivationFunType.SIGMOID.setActivationFunInterface(x -> Math.cos(8*x));
+            assertFalse(ActivationFunType.SIGMOID.isMonotonic());
+            for(PullingType pullingType : PullingType.values()) {
+                NeuralNetwork nn = getConvNetwork(pullingType);
+                assertClose(nn.query(input), nn.createSession().query(input));
+            }
+        } finally {
+            ActivationFunType.SIGMOID.setActivationFunInterface(sigmoid);
+        }
+        assertTrue(ActivationFunType.SIGMOID.isMonotonic());
+    }
+
+    @Test
+    public void testMetrics() {
+        NeuralNetwork nn = getConvNetwork(PullingType.AVERAGE);
+        List<Matrix3D> inputs = new ArrayList<>();
+        List<Matrix> targets = new ArrayList<>();
+        for(int i = 0; i < 5; ++i) {
+            inputs.add(new Matrix3D(new Matrix(12, 12, 0, 1), new Matrix(12, 12, 0, 1)));
+            targets.add(new Matrix(1, 4, 0, 1));
+        }
+        ExtractedData data = new ExtractedData();
+        data.setInputs(inputs);
+        data.setOutputs(targets);
+        assertNull(nn.getListener());
+        NetworkMetrics metrics = new NetworkMetrics();
+        nn.setListener(metrics);
+        nn.setBatchSize(2);
+        nn.train(data, 2, false);
+        assertEquals(10, metrics.getSamples());
+        assertEquals(2, metrics.getEpochNanos().size());
+        assertEquals(nn.getLayers().size(), metrics.getLayersCount());
+        for(int i = 0; i < nn.getLayers().size()-1; ++i) {
+            assertTrue(metrics.getForwardNanos(i) > 0);
+            assertTrue(metrics.getBackwardNanos(i) > 0);
+        }
+        assertTrue(metrics.getSamplesPerSecond() > 0);
+        metrics.reset();
+        nn.setListener(null);
+        nn.train(data, 1, false);
+        assertEquals(0, metrics.getSamples());
+    }
+}
@@ -0,0 +1,47 @@
+package ru.mralexeimk.cnn.models;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TrialJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAppendReopen() throws IOException {
+        File file = new File(folder.getRoot(), "trials.journal");
+        long seed;
+        try(TrialJournal journal = TrialJournal.open(file, "test")) {
+            seed = journal.getSeed();
+            journal.append(new TrialJournal.Record(0, 1, 0.1 / 3, 2, 90));
+            journal.append(new TrialJournal.Record(1, 0, 0.05, 1, 12.5));
+        }
+        Files.writeString(file.toPath(), Files.readString(file.toPath()) + "2,0,0.0");
+        try(TrialJournal journal = TrialJournal.open(file, "test")) {
+            assertEquals(seed, journal.getSeed());
+            assertEquals(2, journal.getRecords().size());
+            assertEquals(0.1 / 3, journal.get(0, 1, 2).getLr(), 0);
+            assertEquals(12.5, journal.get(1, 0, 1).getRes(), 0);
+            assertNull(journal.get(0, 1, 1));
+            journal.append(new TrialJournal.Record(2, 0, 0.01, 1, 50));
+        }
+        assertEquals(4, Files.readAllLines(file.toPath()).size());
+        try(TrialJournal journal = TrialJournal.open(file, "test")) {
+            assertEquals(3, journal.getRecords().size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOtherSearch() throws IOException {
+        File file = new File(folder.getRoot(), "trials.journal");
+        TrialJournal.open(file, "test").close();
+        TrialJournal.open(file, "other");
+    }
+}